@@ -26,5 +26,68 @@ public abstract class Controller {
 	
 	public abstract int getNextAction();
 	
+	/**
+	 * Binds the controller to a new game and resets it, so that a pooled controller can be 
+	 * reused between runs instead of being recreated. Controllers that derive state from 
+	 * the map when constructed override this to rebuild it.
+	 */
+	public void rebind(PlayMap map, GameCharacter controllingChar){
+		this.map = map;
+		this.controllingChar = controllingChar;
+		reset();
+	}
+	
+	/**
+	 * Decides the next action for each state in a batch, writing the action for states[i] into out[i].
+	 * The default implementation binds the controller to each state in turn and calls getNextAction(), 
+	 * restoring the original map and character afterwards. Controllers that can decide directly from 
+	 * a state override this to avoid the rebinding and per-call allocations.
+	 */
+	public void getNextActions(PlayMap[] states, int[] out){
+		PlayMap boundMap = map;
+		GameCharacter boundChar = controllingChar;
+		try {
+			for(int i=0;i<states.length;i++){
+				map = states[i];
+				controllingChar = states[i].getHero();
+				out[i] = getNextAction();
+			}
+		} finally {
+			map = boundMap;
+			controllingChar = boundChar;
+		}
+	}
+	
+	// x and y offsets of UP, RIGHT, DOWN, LEFT
+	protected static final int[] MOVE_X = {0,1,0,-1};
+	protected static final int[] MOVE_Y = {-1,0,1,0};
+	
+	/**
+	 * Fills moves with the directions the hero of the given state can take (without allocating)
+	 * and returns how many were written.
+	 */
+	protected static int getValidMoves(PlayMap state, int[] moves){
+		int heroX = state.getHero().getX();
+		int heroY = state.getHero().getY();
+		int count = 0;
+		for(int i=0;i<4;i++){
+			if(state.isValidMove(heroX+MOVE_X[i], heroY+MOVE_Y[i])){ moves[count++] = i; }
+		}
+		return count;
+	}
+	
+	/**
+	 * Same check as isValidMove(getNextPosition(direction)), where IDLE keeps the hero in place.
+	 */
+	protected static boolean isValidDirection(PlayMap state, int direction){
+		int x = state.getHero().getX();
+		int y = state.getHero().getY();
+		if(direction>=0 && direction<4){
+			x += MOVE_X[direction];
+			y += MOVE_Y[direction];
+		}
+		return state.isValidMove(x, y);
+	}
+	
 	public void reset(){}
 }
@@ -0,0 +1,13 @@
+package controllers;
+
+import dungeon.play.GameCharacter;
+import dungeon.play.PlayMap;
+
+/**
+ * Creates a controller for a character of a map. Parameters that the constructor of a 
+ * controller needs beyond these (e.g. the MCTS iteration count) are captured by the factory.
+ */
+@FunctionalInterface
+public interface ControllerFactory {
+	Controller create(PlayMap map, GameCharacter controllingChar);
+}
@@ -0,0 +1,10 @@
+package controllers;
+
+/**
+ * Service interface for contributing controllers to the default ControllerRegistry. 
+ * Implementations are found with ServiceLoader, i.e. listed by class name in 
+ * META-INF/services/controllers.ControllerProvider on the classpath.
+ */
+public interface ControllerProvider {
+	void registerControllers(ControllerRegistry registry);
+}
@@ -0,0 +1,83 @@
+package controllers;
+
+import java.lang.reflect.Constructor;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dungeon.play.GameCharacter;
+import dungeon.play.PlayMap;
+
+/**
+ * Named controller factories. The default registry holds the bundled controllers under their 
+ * class names, plus whatever the ControllerProviders on the classpath register. Names that 
+ * are not registered are resolved once as classes with a (PlayMap, GameCharacter) constructor.
+ */
+public class ControllerRegistry {
+	public static final int DEFAULT_MCTS_ITERATIONS = 10;
+	
+	final ConcurrentHashMap<String,ControllerFactory> factories = new ConcurrentHashMap<String,ControllerFactory>();
+	
+	static class DefaultHolder {
+		static final ControllerRegistry INSTANCE = createDefault();
+	}
+	
+	public static ControllerRegistry getDefault(){ return DefaultHolder.INSTANCE; }
+	
+	static ControllerRegistry createDefault(){
+		ControllerRegistry result = new ControllerRegistry();
+		result.register("controllers.IdleController", IdleController::new);
+		result.register("controllers.RandomController", RandomController::new);
+		result.register("controllers.ZombieController", ZombieController::new);
+		result.register("controllers.RoombaController", RoombaController::new);
+		result.register("controllers.PathfindingController", PathfindingController::new);
+		result.register("controllers.MCTSController", mcts(DEFAULT_MCTS_ITERATIONS));
+		for(ControllerProvider provider : ServiceLoader.load(ControllerProvider.class)){
+			provider.registerControllers(result);
+		}
+		return result;
+	}
+	
+	public static ControllerFactory mcts(int iterations){
+		return (map, controllingChar) -> new MCTSController(map, controllingChar, iterations);
+	}
+	
+	public void register(String name, ControllerFactory factory){ factories.put(name, factory); }
+	public boolean isRegistered(String name){ return factories.containsKey(name); }
+	public Set<String> getNames(){ return new TreeSet<String>(factories.keySet()); }
+	
+	/**
+	 * @throws IllegalArgumentException if the name is neither registered nor a controller class 
+	 * with a (PlayMap, GameCharacter) constructor
+	 */
+	public ControllerFactory getFactory(String name){
+		ControllerFactory result = factories.get(name);
+		if(result==null){
+			result = reflectiveFactory(name);
+			ControllerFactory previous = factories.putIfAbsent(name, result);
+			if(previous!=null){ result = previous; }
+		}
+		return result;
+	}
+	
+	public Controller create(String name, PlayMap map, GameCharacter controllingChar){
+		return getFactory(name).create(map, controllingChar);
+	}
+	
+	static ControllerFactory reflectiveFactory(String name){
+		Constructor<? extends Controller> constructor;
+		try {
+			constructor = Class.forName(name).asSubclass(Controller.class).getConstructor(PlayMap.class, GameCharacter.class);
+		} catch(ReflectiveOperationException | ClassCastException e){
+			throw new IllegalArgumentException("Unknown controller "+name+": "+e.toString(), e);
+		}
+		return (map, controllingChar) -> {
+			try {
+				return constructor.newInstance(map, controllingChar);
+			} catch(ReflectiveOperationException e){
+				throw new IllegalArgumentException("Cannot create controller "+name+": "+e.toString(), e);
+			}
+		};
+	}
+}
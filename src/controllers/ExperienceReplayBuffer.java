@@ -0,0 +1,134 @@
+package controllers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Memoria de experiencias (experience replay) del QLearningController: un buffer circular de capacidad fija con las
+ * últimas transiciones (estado, acción, recompensa, estado siguiente). Cada transición es un registro de 64 bytes en
+ * un ByteBuffer directo, fuera del heap, así que guardar una transición no crea objetos y el GC no recorre el buffer
+ * aunque tenga millones de registros.
+ *
+ * Registro: [0, 26) estado, [26, 52) estado siguiente, 52 acción, [56, 64) recompensa.
+ */
+public class ExperienceReplayBuffer {
+    public static final int STATE_LENGTH = 26; // ventana de 5x5 + nivel de vida (ver QLearningController)
+    static final int RECORD_BYTES = 64;
+    private static final int NEXT_STATE = STATE_LENGTH;
+    private static final int ACTION = 2 * STATE_LENGTH;
+    private static final int REWARD = 56;
+
+    private final ByteBuffer records;
+    private final int capacity;
+    private int size;
+    private int next;   // registro que se sobrescribe con la próxima transición
+    private final byte[] key = new byte[STATE_LENGTH];
+
+    /**
+     * @param capacity número de transiciones guardadas; al llenarse se sobrescriben las más antiguas
+     * @throws IllegalArgumentException si la capacidad no es positiva o no cabe en un ByteBuffer
+     */
+    public ExperienceReplayBuffer(int capacity) {
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE / RECORD_BYTES) {
+            throw new IllegalArgumentException("Invalid replay capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_BYTES);
+    }
+
+    public int capacity() { return capacity; }
+    public int size() { return size; }
+
+    /**
+     * Guarda una transición, sobrescribiendo la más antigua si el buffer está lleno.
+     *
+     * @throws IllegalArgumentException si algún estado no tiene STATE_LENGTH caracteres
+     */
+    public void add(String state, int action, double reward, String nextState) {
+        if (state.length() != STATE_LENGTH || nextState.length() != STATE_LENGTH) {
+            throw new IllegalArgumentException("Replay states must have " + STATE_LENGTH + " characters");
+        }
+        int offset = next * RECORD_BYTES;
+        for (int i = 0; i < STATE_LENGTH; i++) {
+            // las keys solo usan caracteres ASCII
+            records.put(offset + i, (byte) state.charAt(i));
+            records.put(offset + NEXT_STATE + i, (byte) nextState.charAt(i));
+        }
+        records.put(offset + ACTION, (byte) action);
+        records.putDouble(offset + REWARD, reward);
+        next = (next + 1 == capacity) ? 0 : next + 1;
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    /**
+     * @return índice de un registro al azar (uniforme entre los guardados)
+     */
+    public int sample(Random random) {
+        return random.nextInt(size);
+    }
+
+    public String getState(int record) { return readState(record * RECORD_BYTES); }
+    public String getNextState(int record) { return readState(record * RECORD_BYTES + NEXT_STATE); }
+    public int getAction(int record) { return records.get(record * RECORD_BYTES + ACTION); }
+    public double getReward(int record) { return records.getDouble(record * RECORD_BYTES + REWARD); }
+
+    private String readState(int offset) {
+        records.get(offset, key);
+        return new String(key, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return copia independiente del buffer (para los checkpoints)
+     */
+    public ExperienceReplayBuffer copy() {
+        ExperienceReplayBuffer copy = new ExperienceReplayBuffer(capacity);
+        copy.records.put(0, records, 0, size * RECORD_BYTES);
+        copy.size = size;
+        copy.next = next;
+        return copy;
+    }
+
+    /**
+     * Escribe la capacidad, la posición y los registros guardados (no la capacidad vacía).
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(capacity);
+        out.writeInt(size);
+        out.writeInt(next);
+        byte[] chunk = new byte[RECORD_BYTES * 1024];
+        for (int offset = 0; offset < size * RECORD_BYTES; offset += chunk.length) {
+            int length = Math.min(chunk.length, size * RECORD_BYTES - offset);
+            records.get(offset, chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Lee un buffer escrito con write.
+     *
+     * @throws IllegalArgumentException si los datos no son válidos
+     */
+    static ExperienceReplayBuffer read(DataInputStream in) throws IOException {
+        ExperienceReplayBuffer result = new ExperienceReplayBuffer(in.readInt());
+        int size = in.readInt();
+        int next = in.readInt();
+        if (size < 0 || size > result.capacity || next < 0 || next >= result.capacity) {
+            throw new IllegalArgumentException("Invalid replay buffer");
+        }
+        byte[] chunk = new byte[RECORD_BYTES * 1024];
+        for (int offset = 0; offset < size * RECORD_BYTES; offset += chunk.length) {
+            int length = Math.min(chunk.length, size * RECORD_BYTES - offset);
+            in.readFully(chunk, 0, length);
+            result.records.put(offset, chunk, 0, length);
+        }
+        result.size = size;
+        result.next = next;
+        return result;
+    }
+}
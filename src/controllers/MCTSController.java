@@ -4,20 +4,71 @@ import dungeon.play.GameCharacter;
 import dungeon.play.PlayMap;
 import dungeon.play.Hero;
 import util.math2d.Point2D;
+import util.metrics.LatencyHistogram;
+import util.metrics.Metrics;
+import util.statics.RandomNumberManager;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Random;
 import java.util.Queue;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.LongAdder;
 
 public class MCTSController extends Controller {
+    // Pesos de la función de recompensa (distancia a la salida, llegada a la salida, vida)
+    private static final double D_MULT = -3;
+    private static final double W_MULT = 50;
+    private static final double L_MULT = 1;
+
+    // Tablas precalculadas para UCB1, indexadas por cantidad de visitas
+    private static final int TABLE_SIZE = 1 << 16;
+    private static final double[] SQRT_LOG = new double[TABLE_SIZE];
+    private static final double[] INVERSE = new double[TABLE_SIZE];
+    private static final double[] INVERSE_SQRT = new double[TABLE_SIZE];
+
+    static {
+        for (int n = 1; n < TABLE_SIZE; n++) {
+            SQRT_LOG[n] = Math.sqrt(Math.log(n));
+            INVERSE[n] = 1.0 / n;
+            INVERSE_SQRT[n] = 1.0 / Math.sqrt(n);
+        }
+    }
+
+    // Métricas globales (ver Metrics), acumuladas una vez por decisión para no tocarlas en cada iteración
+    private static final LongAdder ITERATIONS = Metrics.counter("MCTSController.iterations");
+    private static final LongAdder ROLLOUTS = Metrics.counter("MCTSController.rollouts");
+    private static final LongAdder ROLLOUT_STEPS = Metrics.counter("MCTSController.rolloutSteps");
+    private static final LatencyHistogram DECISION_TIME = Metrics.histogram("MCTSController.decision");
+
+    // Constante de exploración C_p de UCB1 (sqrt(2) corresponde a UCB1 clásico)
+    private double explorationConstant = Math.sqrt(2);
+
     private Random random;
     private int iterations;
     private int[][] distanceMatrixMap;
     private Node root;
 
+    // Parámetros de corte temprano de las simulaciones (rollouts)
+    private int maxRolloutDepth = 50;
+    private boolean earlyTermination = true;
+    private int exitCutoffDistance = 1;
+
+    // Contadores de las simulaciones realizadas
+    private long rollouts;
+    private long rolloutSteps;
+    private long truncatedRollouts;
+
+    // Expansión perezosa: si es verdadero se descartan los retrocesos dominados en pasillos vacíos
+    private boolean pruneReversals = true;
+    private long expandedNodes;
+
+    // Presupuesto de memoria del árbol que se conserva entre acciones, y su contabilidad
+    private long retainedTreeBudget = 128L * 1024 * 1024;
+    private long nodeBytes;
+    private int nodesRetained;
+    private long nodesDiscarded;
+
     /**
      * Constructor de MCTSController.
      * @param playMap Mapa inicial
@@ -26,10 +77,11 @@ public class MCTSController extends Controller {
      */
     public MCTSController(PlayMap playMap, GameCharacter hero, int iterations) {
         super(playMap, hero, "MCTSController");
-        this.random = new Random();
+        this.random = new Random(RandomNumberManager.getRandomInt());
         this.iterations = iterations;
 
         this.root = new Node(null, -1, map.clone());
+        this.nodeBytes = estimateNodeBytes(map);
 
         //generateDistanceMatrix(playMap);
         distanceMatrixMap = getDistancesFromExit();
@@ -56,7 +108,8 @@ public class MCTSController extends Controller {
         //System.out.println("MCTSController.getNextAction()");
         int action = mcts();
         Node chosen = null;
-        for (Node child: this.root.children) {
+        for (int i = 0; i < this.root.childCount; i++) {
+            Node child = this.root.children[i];
             if (child.action == action) {
                 chosen = child;
                 break;
@@ -66,11 +119,100 @@ public class MCTSController extends Controller {
             System.out.println("¡OJO! No se encontro un hijo de la raiz con la acción entragada");
         }
         else {
-            this.root = chosen;
+            reroot(chosen);
         }
         return action;
     }
 
+    /**
+     * Convierte al hijo escogido en la nueva raíz. Se corta el enlace con el padre para que la raíz
+     * anterior y los subárboles hermanos queden libres para el recolector de basura, y luego se recorta el
+     * subárbol conservado para respetar retainedTreeBudget.
+     * @param chosen Hijo de la raíz asociado a la acción tomada
+     */
+    private void reroot(Node chosen) {
+        int before = countNodes(root);
+        chosen.parent = null;
+        root = chosen;
+        root.restorePrunedAction();
+        nodesDiscarded += before - countNodes(root);
+        nodesRetained = trimToBudget(root, (int) Math.max(1, Math.min(Integer.MAX_VALUE, retainedTreeBudget / nodeBytes)));
+    }
+
+    /**
+     * Recorre el subárbol en anchura y conserva a lo más maxNodes nodos. Los nodos cuyos hijos no caben se
+     * vuelven hojas (se descartan sus hijos y se recuperan sus acciones sin probar), manteniendo sus estadísticas.
+     * @param start Raíz del subárbol
+     * @param maxNodes Máximo de nodos a conservar
+     * @return Cantidad de nodos conservados
+     */
+    private int trimToBudget(Node start, int maxNodes) {
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(start);
+        int kept = 1;
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            if (node.childCount == 0) {
+                continue;
+            }
+            if (kept + node.childCount > maxNodes) {
+                for (int i = 0; i < node.childCount; i++) {
+                    nodesDiscarded += countNodes(node.children[i]);
+                }
+                node.clearChildren();
+                node.initUntriedActions();
+                if (node == start) {
+                    // la raíz real debe poder retroceder (ver reroot), así que no se poda su retroceso
+                    node.restorePrunedAction();
+                }
+                continue;
+            }
+            kept += node.childCount;
+            for (int i = 0; i < node.childCount; i++) {
+                queue.add(node.children[i]);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @param start Raíz del subárbol
+     * @return Cantidad de nodos del subárbol, incluida la raíz
+     */
+    private int countNodes(Node start) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(start);
+        int count = 0;
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            count++;
+            for (int i = 0; i < node.childCount; i++) {
+                stack.push(node.children[i]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Estimación aproximada (en bytes, JVM de 64 bits con punteros comprimidos) de lo que ocupa un nodo del
+     * árbol, dominado por su copia de PlayMap: matrices de exploración y visitas, bitsets y entidades. El grafo
+     * de A* de DungeonPaths no se cuenta porque los clones solo lo construyen si se les pide un camino.
+     * @param playMap Mapa de referencia
+     * @return Bytes estimados por nodo
+     */
+    private static long estimateNodeBytes(PlayMap playMap) {
+        long sizeX = playMap.getMapSizeX();
+        long sizeY = playMap.getMapSizeY();
+        long entities = playMap.getMonsterLength() + playMap.getRewardLength() + playMap.getPotionLength();
+        long booleanGrid = 16 + 4 * sizeX + sizeX * (16 + sizeY);
+        long intGrid = 16 + 4 * sizeX + sizeX * (16 + 4 * sizeY);
+        long grids = 3 * booleanGrid + intGrid + 5 * (16 + 5 * 4);
+        // el héroe, y por cada tabla de entidades solo se copian los bits de vida
+        long characters = (40 + 2 * 32) + 3 * (16 + 8 * ((entities + 63) / 64)) + (entities + playMap.getExitLength()) * 32;
+        long bitsets = 12 * (16 + 8 * ((sizeX * sizeY + 63) / 64));
+        return 64 + 48 + grids + characters + bitsets;
+    }
+
     /**
      * Función para generar una matriz que implementa BFS hasta la salida, considerando las colisiones.
      * <ul>
@@ -196,9 +338,78 @@ public class MCTSController extends Controller {
         return !playMap.isPassable(x, y);
     }
 
+    /**
+     * Reutiliza el controlador en una nueva partida: reconstruye la raíz y la matriz de distancias del nuevo mapa.
+     */
+    @Override
+    public void rebind(PlayMap playMap, GameCharacter hero) {
+        super.rebind(playMap, hero);
+        random.setSeed(RandomNumberManager.getRandomInt());
+        this.root = new Node(null, -1, map.clone());
+        this.nodeBytes = estimateNodeBytes(map);
+        distanceMatrixMap = getDistancesFromExit();
+    }
+
     @Override
     public void reset() {
         // Reiniciar cualquier estado necesario
+        rollouts = 0;
+        rolloutSteps = 0;
+        expandedNodes = 0;
+        nodesRetained = 0;
+        nodesDiscarded = 0;
+        truncatedRollouts = 0;
+    }
+
+    /**
+     * Configura el corte de las simulaciones.
+     * @param maxRolloutDepth Máximo de acciones por simulación
+     * @param earlyTermination Si es verdadero, se cortan las simulaciones cuyo resultado ya está decidido
+     * @param exitCutoffDistance Distancia (en movimientos) a la salida desde la cual se considera decidida
+     */
+    public void setRolloutCutoff(int maxRolloutDepth, boolean earlyTermination, int exitCutoffDistance) {
+        this.maxRolloutDepth = maxRolloutDepth;
+        this.earlyTermination = earlyTermination;
+        this.exitCutoffDistance = exitCutoffDistance;
+    }
+
+    /**
+     * Activa o desactiva el descarte de retrocesos dominados al expandir.
+     * @param pruneReversals Verdadero para descartar retrocesos a casillas vacías
+     */
+    public void setPruneReversals(boolean pruneReversals) {
+        this.pruneReversals = pruneReversals;
+    }
+
+    /**
+     * Define la constante de exploración C_p usada por UCB1.
+     * @param explorationConstant Peso del término de exploración
+     */
+    public void setExplorationConstant(double explorationConstant) {
+        this.explorationConstant = explorationConstant;
+    }
+
+    /**
+     * Define el presupuesto de memoria (en bytes estimados) del árbol que se conserva entre acciones.
+     * @param retainedTreeBudget Bytes máximos a conservar tras cada cambio de raíz
+     */
+    public void setRetainedTreeBudget(long retainedTreeBudget) {
+        this.retainedTreeBudget = retainedTreeBudget;
+    }
+
+    public long getExpandedNodes() { return expandedNodes; }
+    public int getNodesRetained() { return nodesRetained; }
+    public long getNodesDiscarded() { return nodesDiscarded; }
+    public long getRetainedBytesEstimate() { return nodesRetained * nodeBytes; }
+    public long getRollouts() { return rollouts; }
+    public long getTruncatedRollouts() { return truncatedRollouts; }
+
+    /**
+     * @return Largo promedio (en acciones) de las simulaciones realizadas desde el último reset
+     */
+    public double getAverageRolloutLength() {
+        if (rollouts == 0) { return 0; }
+        return (double) rolloutSteps / rollouts;
     }
 
     /**
@@ -207,51 +418,82 @@ public class MCTSController extends Controller {
      */
     private int mcts() {
         //System.out.println("MCTS: Starting MCTS");
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        long rolloutsBefore = rollouts;
+        long rolloutStepsBefore = rolloutSteps;
         for (int i = 0; i < iterations; i++) { // Número de iteraciones
             /* System.out.println("MCTS: Iteration " + i); */
             Node node = select(this.root);
-            if (!node.playMap.isGameHalted()) {
-                expand(node);
-                Node child = node.children.get(random.nextInt(node.children.size()));
+            if (!node.playMap.isGameHalted() && node.untriedCount > 0) {
+                Node child = expand(node);
                 double reward = simulate(child);
                 backpropagate(child, reward);
             }
         }
+        if (Metrics.ENABLED) {
+            ITERATIONS.add(iterations);
+            ROLLOUTS.add(rollouts - rolloutsBefore);
+            ROLLOUT_STEPS.add(rolloutSteps - rolloutStepsBefore);
+            DECISION_TIME.record(System.nanoTime() - start);
+        }
         return bestAction(root);
         /* System.out.println("MCTS: Best action selected: " + bestAction); */
     }
 
     /**
      * Función que selecciona el nodo hijo con el mayor valor UCB1.
-     * Itera entre los nodos hijos del nodo actual hasta alcanzar un nodo hoja.
+     * Itera entre los nodos hijos del nodo actual hasta alcanzar un nodo con acciones sin probar (o una hoja).
      * @param node Nodo inicial para la selección
-     * @return Nodo hoja seleccionado tras aplicar el criterio UCB1
+     * @return Nodo seleccionado tras aplicar el criterio UCB1
      */
     private Node select(Node node) {
        /*  System.out.println("MCTS: Selecting node"); */
-        while (!node.children.isEmpty()) {
-            node = node.children.stream().max((n1, n2) -> Double.compare(ucb1(n1), ucb1(n2))).get();
+        while (node.untriedCount == 0 && node.childCount > 0) {
+            node = node.children[selectChild(node)];
         }
         return node;
     }
 
     /**
-     * Expande un nodo generando sus hijos a partir de todas las acciones posibles y legales.
-     * @param node Nodo a expandir
+     * Expande un nodo generando un único hijo a partir de una de sus acciones legales aún sin probar,
+     * escogida al azar. Solo se clona el mapa de la acción expandida.
+     * @param node Nodo a expandir (debe tener acciones sin probar)
+     * @return Hijo creado
      */
-    private void expand(Node node) {
+    private Node expand(Node node) {
         /* System.out.println("MCTS: Expanding node"); */
-        for (int action = 0; action < 4; action++) { // Asumiendo 4 acciones posibles
-            PlayMap newMap = node.playMap.clone();
-            Point2D pos = newMap.getHero().getNextPosition(action);
-            if (newMap.isValidMove(pos)) {
-                newMap.updateGame(action);
-                node.children.add(new Node(node, action, newMap));
-            }
+        int index = random.nextInt(node.untriedCount);
+        int action = node.untriedActions[index];
+        node.untriedActions[index] = node.untriedActions[--node.untriedCount];
+
+        PlayMap newMap = node.playMap.clone();
+        newMap.updateGame(action);
+        Node child = new Node(node, action, newMap);
+        node.addChild(child);
+        expandedNodes++;
+        return child;
+    }
+
+    /**
+     * Verifica si retroceder a la casilla anterior está dominado: el héroe tiene otra salida y la casilla
+     * de la que viene no tiene nada que recoger (ni monstruo, ni tesoro, ni poción, ni salida).
+     * @param state Mapa del nodo
+     * @param reverse Acción que devuelve al héroe a la casilla anterior
+     * @param validMoves Cantidad de acciones legales desde la posición actual
+     * @return Verdadero si la acción de retroceso se puede descartar
+     */
+    private boolean isDominatedReversal(PlayMap state, int reverse, int validMoves) {
+        if (validMoves < 2) {
+            return false;
         }
+        Point2D back = state.getHero().getNextPosition(reverse);
+        int x = (int) back.x;
+        int y = (int) back.y;
+        return !state.isMonster(x, y) && !state.isReward(x, y) && !state.isPotion(x, y) && !state.isExit(x, y);
     }
     /**
-     * Simula una partida aleatoria desde el estado actual del nodo hasta que el juego termine.
+     * Simula una partida aleatoria desde el estado actual del nodo hasta que el juego termine, se alcance
+     * maxRolloutDepth o el resultado ya esté decidido (ver isRolloutDecided).
      * Realiza movimientos aleatorios válidos y calcula el premio final.
      * @param node Nodo inicial de la simulación
      * @return Recompensa calculada al finalizar la simulación
@@ -259,8 +501,12 @@ public class MCTSController extends Controller {
     private double simulate(Node node) {
         PlayMap simulationMap = node.playMap.clone();
         int i = 0;
-        int max_i = 50;
-        while ((!simulationMap.isGameHalted()) && i < max_i) {
+        boolean decided = false;
+        while ((!simulationMap.isGameHalted()) && i < maxRolloutDepth) {
+            if (earlyTermination && isRolloutDecided(simulationMap)) {
+                decided = true;
+                break;
+            }
             int action;
             Point2D position;
             do {
@@ -271,9 +517,49 @@ public class MCTSController extends Controller {
             simulationMap.updateGame(action); // Solo realiza la acción si es válida
             i++;
         }
+        rollouts++;
+        rolloutSteps += i;
+        if (decided) {
+            truncatedRollouts++;
+            return evaluateStatic(simulationMap);
+        }
         return calculateReward(simulationMap);
     }
 
+    /**
+     * Verifica si el resultado de la simulación ya está determinado y no vale la pena seguir jugando:
+     * el héroe murió, o está a exitCutoffDistance pasos (o menos) de la salida con la vida completa.
+     * @param state Mapa de la simulación
+     * @return Verdadero si se puede cortar la simulación
+     */
+    private boolean isRolloutDecided(PlayMap state) {
+        Hero hero = state.getHero();
+        if (!hero.isAlive()) {
+            return true;
+        }
+        int distance = distanceMatrixMap[hero.getY()][hero.getX()];
+        return distance >= 0 && distance <= exitCutoffDistance
+                && hero.getHitpoints() >= hero.getStartingHitpoints();
+    }
+
+    /**
+     * Evaluador estático para simulaciones truncadas. Si el héroe está vivo y junto a la salida, se evalúa
+     * como si ya hubiese llegado (la distancia restante se cobra igual); si no, se usa calculateReward.
+     * @param state Mapa de la simulación truncada
+     * @return Recompensa estimada del estado
+     */
+    private double evaluateStatic(PlayMap state) {
+        Hero hero = state.getHero();
+        if (!hero.isAlive()) {
+            return calculateReward(state);
+        }
+        double reward = calculateReward(state);
+        if (distanceMatrixMap[hero.getY()][hero.getX()] > 0) {
+            reward += W_MULT;
+        }
+        return reward;
+    }
+
     /*
      * TODO: Editar función para que ocupe la matriz con BFS, premiar también por tesoros y pociones,
      *  penalizar por pisar monstruos, quitar Manhattan
@@ -290,16 +576,13 @@ public class MCTSController extends Controller {
         int heroY = (int) heroCoord.y;
 
         double D = distanceMatrixMap[heroY][heroX];
-        double D_mult = -3;
 
-        double W_mult = 50;
         double W = 0;
         if (D == 0) {W = 1;}
 
         double L = state.getHero().getHitpoints();
-        double L_mult = 1;
 
-        double reward = D_mult * D + W_mult * W + L_mult * L;
+        double reward = D_MULT * D + W_MULT * W + L_MULT * L;
 
         return reward;
     }
@@ -318,22 +601,37 @@ public class MCTSController extends Controller {
         /* System.out.println("MCTS: Backpropagating reward"); */
         while (node != null) {
             node.visits++;
-            node.value += reward;
-            node = node.parent;
+            Node parent = node.parent;
+            if (parent != null) {
+                parent.childVisits[node.indexInParent]++;
+                parent.childValues[node.indexInParent] += reward;
+            }
+            node = parent;
         }
     }
 
-    /*
-     * TODO: Intentar con otros valores para C_p
-     */
-
     /**
-     * Calcula el valor UCB1 de un nodo.
-     * @param node Nodo para el cual se calcula el valor UCB1
-     * @return Valor UCB1 del nodo
+     * Selecciona el hijo con mayor valor UCB1: value/visits + C_p * sqrt(ln(N) / visits).
+     * Recorre los arreglos contiguos de visitas y valores del nodo; el término de exploración del padre se
+     * calcula una sola vez y las raíces, logaritmos e inversos salen de tablas precalculadas.
+     * @param node Nodo padre (con al menos un hijo)
+     * @return Índice del hijo escogido
      */
-    private double ucb1(Node node) {
-        return node.value / node.visits + (Math.sqrt(2 * Math.log(node.parent.visits) / node.visits));
+    private int selectChild(Node node) {
+        double explore = explorationConstant * sqrtLog(node.visits);
+        int[] visits = node.childVisits;
+        double[] values = node.childValues;
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < node.childCount; i++) {
+            int n = visits[i];
+            double score = n == 0 ? Double.POSITIVE_INFINITY : values[i] * inverse(n) + explore * inverseSqrt(n);
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
     }
 
     /**
@@ -343,7 +641,25 @@ public class MCTSController extends Controller {
      */
     private int bestAction(Node root) {
         /* System.out.println("MCTS: Selecting best action"); */
-        return root.children.stream().max((n1, n2) -> Double.compare(n1.visits, n2.visits)).get().action;
+        int best = 0;
+        for (int i = 1; i < root.childCount; i++) {
+            if (root.childVisits[i] > root.childVisits[best]) {
+                best = i;
+            }
+        }
+        return root.children[best].action;
+    }
+
+    private static double sqrtLog(int n) {
+        return n < TABLE_SIZE ? SQRT_LOG[n] : Math.sqrt(Math.log(n));
+    }
+
+    private static double inverse(int n) {
+        return n < TABLE_SIZE ? INVERSE[n] : 1.0 / n;
+    }
+
+    private static double inverseSqrt(int n) {
+        return n < TABLE_SIZE ? INVERSE_SQRT[n] : 1.0 / Math.sqrt(n);
     }
 
     /**
@@ -351,11 +667,18 @@ public class MCTSController extends Controller {
      */
     private class Node {
         Node parent;
-        List<Node> children;
+        int indexInParent;
+        // Hijos y sus estadísticas en arreglos contiguos (a lo más 4 acciones)
+        Node[] children;
+        int[] childVisits;
+        double[] childValues;
+        int childCount;
         int action;
         PlayMap playMap;
         int visits;
-        double value;
+        int[] untriedActions;
+        int untriedCount;
+        int prunedAction;
 
         /**
          * Constructor de Nodo.
@@ -367,9 +690,63 @@ public class MCTSController extends Controller {
             this.parent = parent;
             this.action = action;
             this.playMap = playMap;
-            this.children = new ArrayList<>();
+            this.children = new Node[4];
+            this.childVisits = new int[4];
+            this.childValues = new double[4];
+            this.childCount = 0;
             this.visits = 0;
-            this.value = 0;
+            initUntriedActions();
+        }
+
+        void addChild(Node child) {
+            child.indexInParent = childCount;
+            children[childCount++] = child;
+        }
+
+        void clearChildren() {
+            Arrays.fill(children, null);
+            Arrays.fill(childVisits, 0);
+            Arrays.fill(childValues, 0);
+            childCount = 0;
+        }
+
+        /**
+         * Calcula las acciones legales aún sin probar, sin clonar el mapa. Si corresponde, descarta el
+         * retroceso dominado y lo guarda en prunedAction.
+         */
+        private void initUntriedActions() {
+            untriedActions = new int[4];
+            untriedCount = 0;
+            prunedAction = PlayMap.IDLE;
+            if (playMap.isGameHalted()) {
+                return;
+            }
+            for (int a = 0; a < 4; a++) {
+                if (playMap.isValidMove(playMap.getHero().getNextPosition(a))) {
+                    untriedActions[untriedCount++] = a;
+                }
+            }
+            if (pruneReversals && action != PlayMap.IDLE) {
+                int reverse = (action + 2) % 4;
+                for (int i = 0; i < untriedCount; i++) {
+                    if (untriedActions[i] == reverse && isDominatedReversal(playMap, reverse, untriedCount)) {
+                        untriedActions[i] = untriedActions[--untriedCount];
+                        prunedAction = reverse;
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Devuelve a las acciones sin probar el retroceso descartado. Se usa al convertir el nodo en raíz,
+         * para que el agente real siempre pueda volver atrás.
+         */
+        void restorePrunedAction() {
+            if (prunedAction != PlayMap.IDLE) {
+                untriedActions[untriedCount++] = prunedAction;
+                prunedAction = PlayMap.IDLE;
+            }
         }
     }
 }
\ No newline at end of file
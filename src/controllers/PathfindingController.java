@@ -21,6 +21,39 @@ public class PathfindingController extends Controller {
 		return getBestPathAction();
 	}
 	
+	@Override
+	public void getNextActions(PlayMap[] states, int[] out){
+		for(int i=0;i<states.length;i++){
+			out[i] = getBestPathAction(states[i]);
+		}
+	}
+	
+	/**
+	 * Same decision as getBestPathAction() for an arbitrary state, without building the 
+	 * valid move list or intermediate points.
+	 */
+	public int getBestPathAction(PlayMap state){
+		Point2D exit = state.getExit(1);				// entrance is 0, exit is 1
+		int exitX = (int)(exit.x);
+		int exitY = (int)(exit.y);
+		int heroX = state.getHero().getX();
+		int heroY = state.getHero().getY();
+		int bestPathAction = -1;
+		double closestDistance = Double.POSITIVE_INFINITY;
+		for(int i = 0; i < 4; i++){
+			int x = heroX+MOVE_X[i];
+			int y = heroY+MOVE_Y[i];
+			if(state.isValidMove(x, y)){
+				double distance = state.getPaths().getDistance(x, y, exitX, exitY);
+				if(distance<closestDistance){ 
+					closestDistance = distance;
+					bestPathAction = i;
+				}
+			}
+		}
+		return bestPathAction;
+	}
+	
 	public int getBestPathAction(){
 		Vector<Integer> validMoves = new Vector<Integer>();
 		double[] distancesPerMove = new double[4];	// cardinal directions
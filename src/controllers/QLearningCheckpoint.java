@@ -0,0 +1,164 @@
+package controllers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Foto del entrenamiento de un QLearningController (Q_table, epsilon, episodio, último estado/acción, buffer de replay y
+ * estado de los generadores aleatorios), para poder reanudar un entrenamiento largo donde quedó. Es inmutable, así que se puede escribir
+ * en otro thread mientras el entrenamiento sigue.
+ */
+public class QLearningCheckpoint {
+    private static final int MAGIC = 0x51434B50; // "QCKP"
+    private static final int VERSION = 3;   // 2: buffer de replay al final, 3: modo de los estados (se leen todas)
+
+    private final int episode;
+    private final double epsilon;
+    private final String prevState;
+    private final int prevAction;
+    private final byte[] randomState;
+    private final byte[] globalRandomState;
+    private final HashMap<String, double[]> table;
+    private final boolean symmetricStates;
+    private final ExperienceReplayBuffer replay;
+    private final int replayBatch;
+
+    /**
+     * @param episode           próximo episodio a ejecutar
+     * @param epsilon           exploration rate actual
+     * @param prevState         último estado visto, que recibe la primera actualización del próximo episodio
+     * @param prevAction        acción tomada en prevState
+     * @param randomState       estado del Random del controlador (ver RandomNumberManager.serialize)
+     * @param globalRandomState estado de RandomNumberManager (daño de los monstruos)
+     * @param table             copia de la Q_table, que no se debe modificar después
+     * @param symmetricStates   si las keys de la tabla son estados canónicos
+     * @param replay            copia del buffer de replay, null si no se usa
+     * @param replayBatch       transiciones repetidas por paso
+     */
+    QLearningCheckpoint(int episode, double epsilon, String prevState, int prevAction, byte[] randomState,
+                        byte[] globalRandomState, HashMap<String, double[]> table, boolean symmetricStates,
+                        ExperienceReplayBuffer replay, int replayBatch) {
+        this.episode = episode;
+        this.epsilon = epsilon;
+        this.prevState = prevState;
+        this.prevAction = prevAction;
+        this.randomState = randomState;
+        this.globalRandomState = globalRandomState;
+        this.table = table;
+        this.symmetricStates = symmetricStates;
+        this.replay = replay;
+        this.replayBatch = replayBatch;
+    }
+
+    public int getEpisode() { return episode; }
+    public double getEpsilon() { return epsilon; }
+    public int getTableSize() { return table.size(); }
+    String getPrevState() { return prevState; }
+    int getPrevAction() { return prevAction; }
+    byte[] getRandomState() { return randomState; }
+    byte[] getGlobalRandomState() { return globalRandomState; }
+    HashMap<String, double[]> getTable() { return table; }
+    boolean isSymmetricStates() { return symmetricStates; }
+    ExperienceReplayBuffer getReplay() { return replay; }
+    int getReplayBatch() { return replayBatch; }
+
+    /**
+     * Escribe el checkpoint de forma atómica: primero en un archivo temporal en la misma carpeta, que se fuerza a
+     * disco y luego reemplaza al anterior. Si el proceso muere a mitad, queda el checkpoint anterior intacto.
+     *
+     * @param file dirección del checkpoint
+     */
+    public void write(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(episode);
+                out.writeDouble(epsilon);
+                out.writeBoolean(prevState != null);
+                if (prevState != null) {
+                    out.writeUTF(prevState);
+                }
+                out.writeInt(prevAction);
+                out.writeInt(randomState.length);
+                out.write(randomState);
+                out.writeInt(globalRandomState.length);
+                out.write(globalRandomState);
+                out.writeInt(table.size());
+                for (Map.Entry<String, double[]> entry : table.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    double[] values = entry.getValue();
+                    out.writeByte(values.length);
+                    for (double value : values) {
+                        out.writeDouble(value);
+                    }
+                }
+                out.writeBoolean(symmetricStates);
+                out.writeBoolean(replay != null);
+                if (replay != null) {
+                    out.writeInt(replayBatch);
+                    replay.write(out);
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Carga un checkpoint escrito con write.
+     *
+     * @param file dirección del checkpoint
+     * @throws IllegalArgumentException si el archivo no es un checkpoint
+     */
+    public static QLearningCheckpoint read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = (in.readInt() == MAGIC) ? in.readInt() : -1;
+            if (version < 1 || version > VERSION) {
+                throw new IllegalArgumentException(file + " is not a Q-learning checkpoint");
+            }
+            int episode = in.readInt();
+            double epsilon = in.readDouble();
+            String prevState = in.readBoolean() ? in.readUTF() : null;
+            int prevAction = in.readInt();
+            byte[] randomState = new byte[in.readInt()];
+            in.readFully(randomState);
+            byte[] globalRandomState = new byte[in.readInt()];
+            in.readFully(globalRandomState);
+            int size = in.readInt();
+            HashMap<String, double[]> table = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                double[] values = new double[in.readByte()];
+                for (int a = 0; a < values.length; a++) {
+                    values[a] = in.readDouble();
+                }
+                table.put(key, values);
+            }
+            boolean symmetricStates = version >= 3 && in.readBoolean();
+            ExperienceReplayBuffer replay = null;
+            int replayBatch = 0;
+            if (version >= 2 && in.readBoolean()) {
+                replayBatch = in.readInt();
+                replay = ExperienceReplayBuffer.read(in);
+            }
+            return new QLearningCheckpoint(episode, epsilon, prevState, prevAction, randomState, globalRandomState, table,
+                    symmetricStates, replay, replayBatch);
+        }
+    }
+}
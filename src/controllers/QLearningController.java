@@ -3,12 +3,16 @@ package controllers;
 import dungeon.play.GameCharacter;
 import dungeon.play.PlayMap;
 import util.math2d.Point2D;
+import util.metrics.Metrics;
+import util.statics.RandomNumberManager;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Esta clase es el Controller que utiliza Q_Learning. Cabe mencionar que las constantes del Modelo fueron sacadas del paper
@@ -20,19 +24,35 @@ public class QLearningController extends Controller {
      Generative Agents for Player Decision Modeling in Games.
      La Q-table consta de un String(Mapa + vida de Caracter) y los valores Q para cada acción
     */
-    private final HashMap<String, double[]> table;
+    private final Map<String, double[]> table;
     private final double alpha = 0.5;   //Learning Rate
     private final double gamma = 0.9;   //Discount factor
     private double epsilon;   //Exploration rate, Greddy
     public static final int N_ACTIONS = 4; // UP(0), RIGTH(1), DOWN(2), LEFT(3), no consideraremos IDLE (no tiene sentido)
     public static final int HEALTH_LEVELS = 4; // 0, 1, 2,3  con 0 poca vida y 3 mucha vida
+    // encabezado de la primera columna al guardar una Q_table con estados canónicos (ver setSymmetricStates)
+    public static final String SYMMETRIC_KEY_HEADER = "key_d8";
     private boolean train;
     private int[][] distancesFromExit;
 
+    // Métricas globales de la Q_table (ver Metrics)
+    private static final LongAdder LOOKUPS = Metrics.counter("QLearningController.lookups");
+    private static final LongAdder MISSES = Metrics.counter("QLearningController.misses");
+
     Random random;
     private String prevState;
     private int prevAction;
 
+    // Experience replay (desactivado si replay es null), ver setExperienceReplay
+    private ExperienceReplayBuffer replay;
+    private int replayBatch;
+
+    // Estados canónicos bajo las 8 simetrías de la ventana (ver StateSymmetry). Las keys y acciones de la Q_table
+    // (y de prevState/prevAction) están en el marco canónico; symmetry es la simetría de la última key generada.
+    private boolean symmetricStates;
+    private int symmetry;
+    private final char[] symmetryScratch = new char[StateSymmetry.CELLS];
+
     /**
      * Constructor de QLearningController
      *
@@ -44,7 +64,6 @@ public class QLearningController extends Controller {
     public QLearningController(PlayMap map, GameCharacter controllingChar, boolean setTrain, String fileName) {
         super(map, controllingChar, "QlearningController");
         this.random = new Random();
-        this.prevState = getCurrentState();
         this.prevAction = PlayMap.IDLE;
 
         this.train = setTrain;
@@ -53,13 +72,35 @@ public class QLearningController extends Controller {
             this.table = new HashMap<>();
             epsilon = 1;
         } else {
-            this.table = getQTableFromCSV(fileName);
+            this.table = getQTableFromCSV(fileName);    // también define symmetricStates según el archivo
             epsilon = 0;
         }
+        this.prevState = getCurrentState();
 
         distancesFromExit = getDistancesFromExit();
     }
 
+    /**
+     * Constructor para entrenar varios controladores a la vez sobre una misma Q_table (por ejemplo uno por mapa, cada
+     * uno en su thread). Cada controlador tiene su propio epsilon, Random y buffer de replay; la tabla es lo único
+     * compartido. Las filas se actualizan sin locks (estilo Hogwild): dos threads que actualizan la misma fila al mismo
+     * tiempo pueden perder una de las actualizaciones, lo que no afecta la convergencia en la práctica.
+     *
+     * @param map             mapa de juego que se utilizara
+     * @param controllingChar Caracter que usara QLearning
+     * @param sharedTable     Q_table compartida, que puede tener ya estados
+     */
+    public QLearningController(PlayMap map, GameCharacter controllingChar, ConcurrentMap<String, double[]> sharedTable) {
+        super(map, controllingChar, "QlearningController");
+        this.random = new Random();
+        this.prevAction = PlayMap.IDLE;
+        this.train = true;
+        this.table = sharedTable;
+        epsilon = 1;
+        this.prevState = getCurrentState();
+        distancesFromExit = getDistancesFromExit();
+    }
+
     /**
      * A partir de mapa de Juego, se genera un String con el mapa & vida del jugador(health) por niveles.
      * Los niveles son: (0) si 31 <= health, (1) 15 <= health < 31, (2) 6 <= health < 15, (3) 0 <= health < 6.
@@ -67,11 +108,22 @@ public class QLearningController extends Controller {
      * @return key de Q_table
      */
     public String getCurrentState() {
-        Point2D heroPos = map.getHero().getPosition();
-        int heroX = (int) heroPos.x;
-        int heroY = (int) heroPos.y;
+        return encodeState(map, new StringBuilder());
+    }
 
-        StringBuilder result = new StringBuilder();
+    /**
+     * Genera la key de Q_table (ventana de 5x5 + nivel de vida) para un estado cualquiera, escribiéndola en
+     * result, que se puede reutilizar entre llamadas. Con estados simétricos la ventana se reemplaza por su
+     * representante canónico y la simetría usada queda en symmetry.
+     *
+     * @param map    estado del juego
+     * @param result buffer donde se escribe la key (se vacía antes de usarlo)
+     * @return key de Q_table
+     */
+    private String encodeState(PlayMap map, StringBuilder result) {
+        result.setLength(0);
+        int heroX = map.getHero().getX();
+        int heroY = map.getHero().getY();
 
         for (int y = heroY - 2; y <= heroY + 2; y++) {
             for (int x = heroX - 2; x <= heroX + 2; x++) {
@@ -102,9 +154,70 @@ public class QLearningController extends Controller {
         int healthLevel = (heroHealth >= 31) ? 3 : (heroHealth >= 15) ? 2 : (heroHealth >= 6) ? 1 : 0;
         result.append(healthLevel);
 
+        symmetry = 0;
+        if (symmetricStates) {
+            symmetry = StateSymmetry.canonicalSymmetry(result);
+            StateSymmetry.apply(result, symmetry, symmetryScratch);
+        }
         return result.toString();
     }
 
+    /**
+     * Reutiliza el controlador (y su Q_table) en una nueva partida.
+     */
+    @Override
+    public void rebind(PlayMap map, GameCharacter controllingChar) {
+        super.rebind(map, controllingChar);
+        this.prevState = getCurrentState();
+        this.prevAction = PlayMap.IDLE;
+        distancesFromExit = getDistancesFromExit();
+    }
+
+    /**
+     * Activa experience replay al entrenar: cada transición se guarda en un buffer circular de capacity registros y,
+     * además de la actualización normal, en cada paso se repiten batchSize transiciones al azar del buffer. Así cada
+     * paso simulado se aprovecha varias veces y hacen falta menos episodios para llegar a la misma política.
+     *
+     * @param capacity  transiciones guardadas, 0 desactiva el replay
+     * @param batchSize transiciones repetidas por paso
+     */
+    public void setExperienceReplay(int capacity, int batchSize) {
+        if (capacity == 0) {
+            replay = null;
+        } else {
+            replay = new ExperienceReplayBuffer(capacity);
+        }
+        replayBatch = batchSize;
+    }
+
+    /**
+     * Usa como estado el representante canónico de la ventana bajo sus 8 rotaciones y reflexiones, así que las
+     * situaciones simétricas comparten fila en la Q_table (hasta 8 veces menos estados) y se aprenden juntas. Las
+     * tablas guardadas con estados simétricos se marcan en el encabezado y se cargan en el mismo modo.
+     *
+     * @throws IllegalStateException si la Q_table ya tiene estados en el otro modo
+     */
+    public void setSymmetricStates(boolean value) {
+        if (value != symmetricStates && !table.isEmpty()) {
+            throw new IllegalStateException("The Q-table already has states of the other encoding");
+        }
+        symmetricStates = value;
+        prevState = getCurrentState();
+    }
+
+    public boolean isSymmetricStates() { return symmetricStates; }
+
+    /**
+     * Repite replayBatch transiciones al azar del buffer con la misma formula de updateQTable.
+     */
+    private void replayExperience() {
+        for (int i = 0; i < replayBatch; i++) {
+            int record = replay.sample(random);
+            updateQTable(replay.getState(record), replay.getAction(record), replay.getReward(record),
+                    getQValues(replay.getNextState(record)));
+        }
+    }
+
     /**
      * A partir de un estado, obtenemos los valores Q de la Q_table.
      *
@@ -112,7 +225,18 @@ public class QLearningController extends Controller {
      */
     private double[] getQValues(String state) {
         // Si no hay estado lo crea uno jeje.
-        return table.computeIfAbsent(state, k -> new double[N_ACTIONS]); // defecto: [0, 0, 0, 0]
+        double[] values = table.get(state);
+        if (values == null) {
+            values = new double[N_ACTIONS]; // defecto: [0, 0, 0, 0]
+            double[] existing = table.putIfAbsent(state, values);   // con una tabla compartida otro thread pudo crearlo
+            if (existing != null) {
+                values = existing;
+            } else if (Metrics.ENABLED) {
+                MISSES.increment();
+            }
+        }
+        if (Metrics.ENABLED) { LOOKUPS.increment(); }
+        return values;
     }
 
     /**
@@ -223,8 +347,9 @@ public class QLearningController extends Controller {
      */
     public int getNextAction() {
         String currentState = getCurrentState();
+        int currentSymmetry = symmetry;
         double[] qValues = getQValues(currentState);
-        int action;
+        int action; // en el marco de currentState
 
         //  epsilon Greedy, para que derrepente cambie de ruta
         if (random.nextDouble() < epsilon) {
@@ -241,6 +366,10 @@ public class QLearningController extends Controller {
                 // Esto se calcula a partir del estado actua
                 double reward = computeReward();
                 updateQTable(prevState, prevAction, reward, qValues);
+                if (replay != null && prevAction != PlayMap.IDLE) {
+                    replay.add(prevState, prevAction, reward, currentState);
+                    replayExperience();
+                }
             }
         }
 
@@ -248,7 +377,34 @@ public class QLearningController extends Controller {
         prevState = currentState;
         prevAction = action;
 
-        return action;
+        return StateSymmetry.fromCanonical(currentSymmetry, action);
+    }
+
+    /**
+     * Decide una acción por estado, reutilizando el mismo buffer para las keys. Es solo inferencia: usa la
+     * política epsilon-greedy actual pero no actualiza la Q_table ni agrega estados nuevos (un estado
+     * desconocido se trata como una fila de ceros).
+     *
+     * @param states estados a evaluar
+     * @param out    acción escogida para cada estado
+     */
+    @Override
+    public void getNextActions(PlayMap[] states, int[] out) {
+        StringBuilder key = new StringBuilder(5 * 5 + 1);
+        for (int i = 0; i < states.length; i++) {
+            double[] qValues = table.get(encodeState(states[i], key));
+            if (Metrics.ENABLED) {
+                LOOKUPS.increment();
+                if (qValues == null) { MISSES.increment(); }
+            }
+            int action;
+            if (random.nextDouble() < epsilon) {
+                action = random.nextInt(N_ACTIONS);
+            } else {
+                action = (qValues == null) ? 0 : maxQAction(qValues);
+            }
+            out[i] = StateSymmetry.fromCanonical(symmetry, action);
+        }
     }
 
     /**
@@ -260,7 +416,7 @@ public class QLearningController extends Controller {
 
         try (FileWriter writer = new FileWriter(fileName)) {
             // Escribir los encabezados
-            writer.write("key");
+            writer.write(symmetricStates ? SYMMETRIC_KEY_HEADER : "key");
             for (int i = 1; i <= table.values().iterator().next().length; i++) {
                 writer.write(",a_" + i);
             }
@@ -283,7 +439,7 @@ public class QLearningController extends Controller {
     }
 
     /**
-     * Carga la Qtable desde un archivo .csv
+     * Carga la Qtable desde un archivo .csv, y usa estados simétricos si la tabla se guardó con ellos.
      *
      * @param fileName dirección del archivo.
      */
@@ -293,7 +449,8 @@ public class QLearningController extends Controller {
 
         try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
             // Leer la primera línea (encabezados)
-            String line = reader.readLine(); // Ignorar encabezados
+            String line = reader.readLine(); // Ignorar encabezados, salvo el modo de los estados
+            symmetricStates = line != null && line.startsWith(SYMMETRIC_KEY_HEADER + ",");
 
             // Leer las líneas restantes
             while ((line = reader.readLine()) != null) {
@@ -325,6 +482,41 @@ public class QLearningController extends Controller {
         return hashMap;
     }
 
+    /**
+     * Toma una foto del entrenamiento para escribirla como checkpoint. Solo copia la Q_table, el buffer de replay y el
+     * estado de los generadores aleatorios, así que es rápida; la escritura (lo lento) se puede hacer en otro thread.
+     *
+     * @param episode próximo episodio a ejecutar
+     */
+    public QLearningCheckpoint checkpoint(int episode) {
+        HashMap<String, double[]> copy = new HashMap<>(table.size() * 4 / 3 + 1);
+        for (Map.Entry<String, double[]> entry : table.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().clone());
+        }
+        return new QLearningCheckpoint(episode, epsilon, prevState, prevAction, RandomNumberManager.serialize(random),
+                RandomNumberManager.getState(), copy, symmetricStates, (replay == null) ? null : replay.copy(), replayBatch);
+    }
+
+    /**
+     * Reanuda el entrenamiento desde un checkpoint: reemplaza la Q_table, epsilon, el último estado, el buffer de
+     * replay y los generadores aleatorios (incluido el de RandomNumberManager), así que la secuencia de episodios sigue
+     * como si no se hubiera cortado.
+     */
+    public void restore(QLearningCheckpoint checkpoint) {
+        table.clear();
+        for (Map.Entry<String, double[]> entry : checkpoint.getTable().entrySet()) {
+            table.put(entry.getKey(), entry.getValue().clone());
+        }
+        epsilon = checkpoint.getEpsilon();
+        symmetricStates = checkpoint.isSymmetricStates();
+        prevState = checkpoint.getPrevState();
+        prevAction = checkpoint.getPrevAction();
+        replay = (checkpoint.getReplay() == null) ? null : checkpoint.getReplay().copy();
+        replayBatch = checkpoint.getReplayBatch();
+        random = RandomNumberManager.deserialize(checkpoint.getRandomState());
+        RandomNumberManager.setState(checkpoint.getGlobalRandomState());
+    }
+
     /**
      * Actualiza el epsilon con la formula epsilon*rate
      * @param rate ratio de actualización [0, 1]
@@ -383,8 +575,9 @@ public class QLearningController extends Controller {
 
                 // Validar los límites del mapa y evitar obstáculos o posiciones ya visitadas
                 if (newX >= 0 && newX < mapSizeX && newY >= 0 && newY < mapSizeY && distances[newY][newX] == -1) {
-                    if (map.isEmpty(newX, newY) || map.isHero(newX, newY) || map.isMonster(newX, newY) ||
-                            map.isReward(newX, newY) || map.isPotion(newX, newY)) {
+                    // la entrada se incluye aunque el héroe no esté sobre ella (controlador creado a mitad de partida)
+                    if (map.isEmpty(newX, newY) || map.isHero(newX, newY) || map.isEntrance(newX, newY) ||
+                            map.isMonster(newX, newY) || map.isReward(newX, newY) || map.isPotion(newX, newY)) {
                         // Actualizar distancia y agregar la celda a la cola
                         distances[newY][newX] = distances[currentY][currentX] + 1;
                         queue.add(new Point2D(newX, newY));
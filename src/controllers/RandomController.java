@@ -5,6 +5,7 @@ import dungeon.play.PlayMap;
 import util.math2d.Point2D;
 import util.statics.RandomNumberManager;
 
+import java.util.Arrays;
 import java.util.Vector;
 
 /**
@@ -19,6 +20,11 @@ public class RandomController extends Controller {
 	
 	Point2D prevPos;
 	
+	// per-slot history for getNextActions, where slot i follows the i-th state of every batch
+	int[] slotPrevAction;
+	int[] slotPrevX;
+	int[] slotPrevY;
+	
 	public RandomController(PlayMap map, GameCharacter controllingChar){
 		super(map,controllingChar,"RandomController");
 		updatePrev();
@@ -28,10 +34,19 @@ public class RandomController extends Controller {
 		updatePrev();
 	}
 	
+	@Override
+	public void rebind(PlayMap map, GameCharacter controllingChar){
+		super.rebind(map, controllingChar);
+		updatePrev();
+	}
+	
 	public void reset(){ 
 		prevAction = PlayMap.IDLE;
 		currAction = PlayMap.IDLE;
 		prevPos = null; 
+		slotPrevAction = null;
+		slotPrevX = null;
+		slotPrevY = null;
 	}
 	
 	public int reversePrevAction(){
@@ -67,4 +82,40 @@ public class RandomController extends Controller {
 		}
 		return result;
 	}
+	
+	@Override
+	public void getNextActions(PlayMap[] states, int[] out){
+		if(slotPrevAction==null || slotPrevAction.length!=states.length){
+			slotPrevAction = new int[states.length];
+			slotPrevX = new int[states.length];
+			slotPrevY = new int[states.length];
+			Arrays.fill(slotPrevAction, PlayMap.IDLE);
+			Arrays.fill(slotPrevX, -1);
+			Arrays.fill(slotPrevY, -1);
+		}
+		int[] possibleDirs = new int[4];
+		for(int i=0;i<states.length;i++){
+			int heroX = states[i].getHero().getX();
+			int heroY = states[i].getHero().getY();
+			int count = 0;
+			for(int d=0;d<4;d++){
+				int x = heroX+MOVE_X[d];
+				int y = heroY+MOVE_Y[d];
+				if(!(x==slotPrevX[i] && y==slotPrevY[i]) && states[i].isValidMove(x, y)){ 
+					possibleDirs[count++] = d; 
+				}
+			}
+			int action;
+			if(count==0){
+				action = slotPrevAction[i]-2;	// backtracking only allowed under these conditions
+				if(action<0){ action+=4; }
+			} else {
+				action = possibleDirs[RandomNumberManager.getRandomInt(0,count)];
+			}
+			slotPrevX[i] = heroX;
+			slotPrevY[i] = heroY;
+			slotPrevAction[i] = action;
+			out[i] = action;
+		}
+	}
 }
@@ -4,6 +4,7 @@ import dungeon.play.GameCharacter;
 import dungeon.play.PlayMap;
 import util.statics.RandomNumberManager;
 
+import java.util.Arrays;
 import java.util.Vector;
 
 /**
@@ -17,6 +18,9 @@ public class RoombaController extends Controller {
 	int prevAction = PlayMap.IDLE;
 	int currAction = PlayMap.IDLE;
 	
+	// per-slot direction for getNextActions, where slot i follows the i-th state of every batch
+	int[] slotAction;
+	
 	public RoombaController(PlayMap map, GameCharacter controllingChar){
 		super(map,controllingChar,"RumbaController");
 	}
@@ -27,6 +31,7 @@ public class RoombaController extends Controller {
 	public void reset(){
 		prevAction = PlayMap.IDLE;
 		currAction = PlayMap.IDLE;
+		slotAction = null;
 	}
 	
 	public int getNextAction(){
@@ -40,6 +45,30 @@ public class RoombaController extends Controller {
 		return currAction;
 	}
 	
+	@Override
+	public void getNextActions(PlayMap[] states, int[] out){
+		if(slotAction==null || slotAction.length!=states.length){
+			slotAction = new int[states.length];
+			Arrays.fill(slotAction, PlayMap.IDLE);
+		}
+		int[] possibleDirs = new int[4];
+		for(int i=0;i<states.length;i++){
+			int action = slotAction[i];
+			if(action == PlayMap.IDLE) { action = getRandomAction(states[i], possibleDirs); }
+			if(!isValidDirection(states[i], action)){
+				action = getRandomAction(states[i], possibleDirs);
+			}
+			slotAction[i] = action;
+			out[i] = action;
+		}
+	}
+	
+	int getRandomAction(PlayMap state, int[] possibleDirs){
+		int count = getValidMoves(state, possibleDirs);
+		if(count==0){ return PlayMap.IDLE; }
+		return possibleDirs[RandomNumberManager.getRandomInt(0,count)];
+	}
+	
 	public int getRandomAction(){
 		Vector<Integer> possibleDirs = new Vector<Integer>();
 		for(int i=0;i<4;i++){
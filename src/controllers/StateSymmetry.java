@@ -0,0 +1,94 @@
+package controllers;
+
+/**
+ * Las 8 simetrías del cuadrado (4 rotaciones y 4 reflexiones) sobre la ventana de 5x5 de las keys de
+ * QLearningController. Una situación rotada o reflejada es la misma para el agente, así que cada ventana se reemplaza
+ * por su representante canónico (la menor lexicográficamente de sus 8 versiones) y las acciones se traducen al marco
+ * de ese representante. Las permutaciones de celdas y acciones se precalculan, así que canonizar no crea objetos.
+ */
+final class StateSymmetry {
+    static final int COUNT = 8;
+    static final int SIZE = 5;
+    static final int CELLS = SIZE * SIZE;
+    private static final int RADIUS = SIZE / 2;
+
+    // Simetría t como matriz {a, b, c, d}: (dx, dy) -> (a*dx + b*dy, c*dx + d*dy). La 0 es la identidad.
+    private static final int[][] MATRICES = {
+            {1, 0, 0, 1}, {0, -1, 1, 0}, {-1, 0, 0, -1}, {0, 1, -1, 0},     // rotaciones
+            {-1, 0, 0, 1}, {1, 0, 0, -1}, {0, 1, 1, 0}, {0, -1, -1, 0}      // reflexiones
+    };
+    // Direcciones de UP(0), RIGHT(1), DOWN(2), LEFT(3), como en PlayMap
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    // SOURCE[t][i]: celda de la ventana original que queda en la celda i después de aplicar t
+    private static final int[][] SOURCE = new int[COUNT][CELLS];
+    // FROM_CANONICAL[t][b]: acción original cuya dirección, después de aplicar t, es la de la acción b
+    private static final int[][] FROM_CANONICAL = new int[COUNT][DX.length];
+
+    static {
+        for (int t = 0; t < COUNT; t++) {
+            int[] m = MATRICES[t];
+            for (int dy = -RADIUS; dy <= RADIUS; dy++) {
+                for (int dx = -RADIUS; dx <= RADIUS; dx++) {
+                    SOURCE[t][cell(m[0] * dx + m[1] * dy, m[2] * dx + m[3] * dy)] = cell(dx, dy);
+                }
+            }
+            for (int a = 0; a < DX.length; a++) {
+                int x = m[0] * DX[a] + m[1] * DY[a];
+                int y = m[2] * DX[a] + m[3] * DY[a];
+                for (int b = 0; b < DX.length; b++) {
+                    if (DX[b] == x && DY[b] == y) {
+                        FROM_CANONICAL[t][b] = a;
+                    }
+                }
+            }
+        }
+    }
+
+    private StateSymmetry() {
+    }
+
+    // índice en la key de la celda (dx, dy) relativa al héroe, filas de arriba hacia abajo
+    private static int cell(int dx, int dy) {
+        return (dy + RADIUS) * SIZE + (dx + RADIUS);
+    }
+
+    /**
+     * @param key key cuyos primeros CELLS caracteres son la ventana
+     * @return simetría que lleva la ventana a su representante canónico
+     */
+    static int canonicalSymmetry(CharSequence key) {
+        int best = 0;
+        for (int t = 1; t < COUNT; t++) {
+            for (int i = 0; i < CELLS; i++) {
+                char candidate = key.charAt(SOURCE[t][i]);
+                char current = key.charAt(SOURCE[best][i]);
+                if (candidate != current) {
+                    if (candidate < current) {
+                        best = t;
+                    }
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Aplica la simetría t a la ventana de key, en el mismo StringBuilder (el resto de la key no cambia).
+     *
+     * @param scratch buffer de al menos CELLS caracteres
+     */
+    static void apply(StringBuilder key, int t, char[] scratch) {
+        if (t == 0) {
+            return;
+        }
+        key.getChars(0, CELLS, scratch, 0);
+        for (int i = 0; i < CELLS; i++) {
+            key.setCharAt(i, scratch[SOURCE[t][i]]);
+        }
+    }
+
+    static int fromCanonical(int t, int action) { return FROM_CANONICAL[t][action]; }
+}
@@ -35,6 +35,15 @@ public class ZombieController extends Controller {
 		return getRandomValidMove();
 	}
 	
+	@Override
+	public void getNextActions(PlayMap[] states, int[] out){
+		int[] validMoves = new int[4];
+		for(int i=0;i<states.length;i++){
+			int count = getValidMoves(states[i], validMoves);
+			out[i] = (count==0) ? PlayMap.IDLE : validMoves[RandomNumberManager.getRandomInt(0, count)];
+		}
+	}
+	
 	public int getRandomValidMove(){
         Vector<Integer> validMoves = generateValidMoves();
         return validMoves.get(RandomNumberManager.getRandomInt(0, validMoves.size()));
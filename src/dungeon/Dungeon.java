@@ -1,5 +1,6 @@
 package dungeon;
 
+import java.util.Arrays;
 import java.util.Vector;
 
 import util.math2d.Point2D;
@@ -15,6 +16,14 @@ public class Dungeon {
 	
 	protected DungeonPaths paths;
 	
+	// Bitset views of entity positions, rebuilt lazily after any change to the entity lists.
+	// Tile (x,y) is bit (y*mapSizeX+x): word index>>>6, bit index&63.
+	protected long[] monsterBits;
+	protected long[] rewardBits;
+	protected long[] potionBits;
+	protected long[] exitBits;
+	protected boolean entityBitsDirty = true;
+	
 	public Dungeon(int sizeX, int sizeY){ 
 		this.mapSizeX = sizeX;
 		this.mapSizeY = sizeY;
@@ -28,7 +37,7 @@ public class Dungeon {
 	
 	public Dungeon(Dungeon copy){
 		this.mapSizeX = copy.mapSizeX;
-		this.mapSizeY = copy.mapSizeX;
+		this.mapSizeY = copy.mapSizeY;
 		clearImpassable();
 		for(int x=0;x<impassable.length;x++){
 			for(int y=0;y<impassable[x].length;y++){
@@ -108,6 +117,7 @@ public class Dungeon {
 	public boolean addMonster(int x, int y){
 		if(isEmpty(x,y)){
 			monsters.add(new Point2D(x,y));
+			if(!entityBitsDirty){ setBit(monsterBits, getTileIndex(x,y)); }
 			return true;
 		}
 		return false;
@@ -116,12 +126,14 @@ public class Dungeon {
 		int index = getMonsterIndex(x,y);
 		if(index!=-1){ 
 			monsters.remove(index);
+			entityBitsDirty = true;
 			return true;
 		}
 		return false;
 	}
 	
 	public int getMonsterIndex(int x, int y){
+		if(!isSet(getMonsterBits(),x,y)){ return -1; }
 		for(int i=0;i<monsters.size();i++){
 			if(monsters.get(i).isAt(x, y)){
 				return i;
@@ -133,6 +145,7 @@ public class Dungeon {
 	public boolean addReward(int x, int y){
 		if(isEmpty(x,y)){
 			rewards.add(new Point2D(x,y));
+			if(!entityBitsDirty){ setBit(rewardBits, getTileIndex(x,y)); }
 			return true;
 		}
 		return false;
@@ -141,12 +154,14 @@ public class Dungeon {
 		int index = getRewardIndex(x,y);
 		if(index!=-1){ 
 			rewards.remove(index);
+			entityBitsDirty = true;
 			return true;
 		}
 		return false;
 	}
 	
 	public int getRewardIndex(int x, int y){
+		if(!isSet(getRewardBits(),x,y)){ return -1; }
 		for(int i=0;i<rewards.size();i++){
 			if(rewards.get(i).isAt(x, y)){
 				return i;
@@ -158,6 +173,7 @@ public class Dungeon {
 	public boolean addPotion(int x, int y){
 		if(isEmpty(x,y)){
 			potions.add(new Point2D(x,y));
+			if(!entityBitsDirty){ setBit(potionBits, getTileIndex(x,y)); }
 			return true;
 		}
 		return false;
@@ -166,12 +182,14 @@ public class Dungeon {
 		int index = getPotionIndex(x,y);
 		if(index!=-1){ 
 			potions.remove(index);
+			entityBitsDirty = true;
 			return true;
 		}
 		return false;
 	}
 	
 	public int getPotionIndex(int x, int y){
+		if(!isSet(getPotionBits(),x,y)){ return -1; }
 		for(int i=0;i<potions.size();i++){
 			if(potions.get(i).isAt(x, y)){
 				return i;
@@ -183,6 +201,7 @@ public class Dungeon {
 	public boolean addExit(int x, int y){
 		if(isEmpty(x,y)){
 			exits.add(new Point2D(x,y));
+			if(!entityBitsDirty){ setBit(exitBits, getTileIndex(x,y)); }
 			return true;
 		}
 		return false;
@@ -191,12 +210,14 @@ public class Dungeon {
 		int index = getExitIndex(x,y);
 		if(index!=-1){ 
 			exits.remove(index);
+			entityBitsDirty = true;
 			return true;
 		}
 		return false;
 	}
 	
 	public int getExitIndex(int x, int y){
+		if(!isSet(getExitBits(),x,y)){ return -1; }
 		for(int i=0;i<exits.size();i++){
 			if(exits.get(i).isAt(x, y)){
 				return i;
@@ -258,22 +279,10 @@ public class Dungeon {
 	public Point2D getReward(int index){ return rewards.get(index); }
 	public Point2D getPotion(int index){ return potions.get(index); }
 	
-	public boolean isExit(int x, int y){ 
-		if(isWithinBounds(x,y)){ return inList(x,y,this.exits); } 
-		return false;
-	}
-	public boolean isMonster(int x, int y){ 
-		if(isWithinBounds(x,y)){ return inList(x,y,this.monsters); } 
-		return false;
-	}
-	public boolean isReward(int x, int y){ 
-		if(isWithinBounds(x,y)){ return inList(x,y,this.rewards); } 
-		return false;
-	}
-	public boolean isPotion(int x, int y){ 
-		if(isWithinBounds(x,y)){ return inList(x,y,this.potions); } 
-		return false;
-	}
+	public boolean isExit(int x, int y){ return isSet(getExitBits(),x,y); }
+	public boolean isMonster(int x, int y){ return isSet(getMonsterBits(),x,y); }
+	public boolean isReward(int x, int y){ return isSet(getRewardBits(),x,y); }
+	public boolean isPotion(int x, int y){ return isSet(getPotionBits(),x,y); }
 	public boolean inList(int x, int y, Vector<Point2D> list){
 		for(int i=0;i<list.size();i++){
 			Point2D currPoint = list.get(i);
@@ -332,11 +341,6 @@ public class Dungeon {
 	}
 	public boolean[][] getMonsterArray(){
 		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
 		for(int i=0;i<monsters.size();i++){
 			result[(int)(monsters.get(i).x)][(int)(monsters.get(i).y)]=true;
 		}
@@ -344,11 +348,6 @@ public class Dungeon {
 	}
 	public boolean[][] getRewardArray(){
 		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
 		for(int i=0;i<rewards.size();i++){
 			result[(int)(rewards.get(i).x)][(int)(rewards.get(i).y)]=true;
 		}
@@ -356,11 +355,6 @@ public class Dungeon {
 	}
 	public boolean[][] getPotionArray(){
 		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
 		for(int i=0;i<potions.size();i++){
 			result[(int)(potions.get(i).x)][(int)(potions.get(i).y)]=true;
 		}
@@ -368,11 +362,6 @@ public class Dungeon {
 	}
 	public boolean[][] getExitArray(){
 		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
 		for(int i=0;i<exits.size();i++){
 			result[(int)(exits.get(i).x)][(int)(exits.get(i).y)]=true;
 		}
@@ -380,30 +369,78 @@ public class Dungeon {
 	}
 	public boolean[][] getArray(Vector<Point2D> points){
 		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
 		for(int i=0;i<points.size();i++){
 			result[(int)(points.get(i).x)][(int)(points.get(i).y)]=true;
 		}
 		return result;
 	}
+	// ----------------------------------------------------------------
+	// BITSET views (shared and read-only: callers must not modify them)
+	// ----------------------------------------------------------------
+	
+	public int getTileIndex(int x, int y){ return y*mapSizeX+x; }
+	
+	public long[] getMonsterBits(){ updateEntityBits(); return monsterBits; }
+	public long[] getRewardBits(){ updateEntityBits(); return rewardBits; }
+	public long[] getPotionBits(){ updateEntityBits(); return potionBits; }
+	public long[] getExitBits(){ updateEntityBits(); return exitBits; }
+	
+	protected void updateEntityBits(){
+		if(!entityBitsDirty){ return; }
+		monsterBits = toBits(monsters);
+		rewardBits = toBits(rewards);
+		potionBits = toBits(potions);
+		exitBits = toBits(exits);
+		entityBitsDirty = false;
+	}
+	
+	protected long[] newBits(){ return new long[(mapSizeX*mapSizeY+63)>>>6]; }
+	
+	/** @return bits cleared in place, or new ones if there are none yet */
+	protected long[] clearBits(long[] bits){
+		if(bits==null){ return newBits(); }
+		Arrays.fill(bits, 0L);
+		return bits;
+	}
+	
+	protected long[] toBits(Vector<Point2D> points){
+		long[] result = newBits();
+		for(int i=0;i<points.size();i++){
+			setBit(result, getTileIndex((int)(points.get(i).x),(int)(points.get(i).y)));
+		}
+		return result;
+	}
+	
+	public boolean isSet(long[] bits, int x, int y){
+		return isWithinBounds(x,y) && isSet(bits, getTileIndex(x,y));
+	}
+	
+	public static boolean isSet(long[] bits, int index){ return (bits[index>>>6] & (1L<<index))!=0; }
+	public static void setBit(long[] bits, int index){ bits[index>>>6] |= (1L<<index); }
+	public static void clearBit(long[] bits, int index){ bits[index>>>6] &= ~(1L<<index); }
+	public static int countBits(long[] bits){
+		int result = 0;
+		for(int i=0;i<bits.length;i++){ result+=Long.bitCount(bits[i]); }
+		return result;
+	}
+	
 	public void randomize(int exitCount,int monsterCount,int rewardCount){
 		this.exits.clear();
+		entityBitsDirty = true;
 		for(int i=0;i<exitCount;i++){
 			int x = RandomNumberManager.getRandomInt(0,mapSizeX);
 			int y = RandomNumberManager.getRandomInt(0,mapSizeY);
 			addExit(x,y);
 		}
 		this.monsters.clear();
+		entityBitsDirty = true;
 		for(int i=0;i<monsterCount;i++){
 			int x = RandomNumberManager.getRandomInt(0,mapSizeX);
 			int y = RandomNumberManager.getRandomInt(0,mapSizeY);
 			addMonster(x,y);
 		}
 		this.rewards.clear();
+		entityBitsDirty = true;
 		for(int i=0;i<monsterCount;i++){
 			int x = RandomNumberManager.getRandomInt(0,mapSizeX);
 			int y = RandomNumberManager.getRandomInt(0,mapSizeY);
@@ -413,6 +450,7 @@ public class Dungeon {
 	public void randomize(int exitCount,int monsterCount,int rewardCount, int potionCount){
 		randomize(exitCount, monsterCount, rewardCount);
 		this.potions.clear();
+		entityBitsDirty = true;
 		for(int i=0;i<potionCount;i++){
 			int x = RandomNumberManager.getRandomInt(0,mapSizeX);
 			int y = RandomNumberManager.getRandomInt(0,mapSizeY);
@@ -429,25 +467,25 @@ public class Dungeon {
 	}
 	
 	public String toASCII(){
-		String result="";
-		for(int y=0;y<mapSizeX;y++){
+		StringBuilder result = new StringBuilder(mapSizeY*(mapSizeX+1));
+		for(int y=0;y<mapSizeY;y++){
 			for(int x=0;x<mapSizeX;x++){
 				if(impassable[x][y]){ 
-					result+="#"; 
+					result.append('#'); 
 				} else if(isExit(x,y)){
-					result+="E"; 
+					result.append('E'); 
 				} else if(isMonster(x,y)){
-					result+="m"; 
+					result.append('m'); 
 				} else if(isReward(x,y)){
-					result+="r"; 
+					result.append('r'); 
 				} else if(isPotion(x,y)){
-					result+="p"; 
+					result.append('p'); 
 				} else {
-					result+=".";
+					result.append('.');
 				}				
 			}
-			result+=";";
+			result.append(';');
 		}
-		return result;
+		return result.toString();
 	}
-}
+}
\ No newline at end of file
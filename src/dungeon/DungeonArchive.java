@@ -0,0 +1,180 @@
+package dungeon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.Vector;
+
+import util.math2d.Point2D;
+
+/**
+ * A packed, memory-mapped set of dungeons. Levels are decoded on demand by get(index), so 
+ * iterating a corpus of many thousands of levels needs neither one file per level nor 
+ * parsing, and only the pages that are actually read are loaded by the operating system.
+ * <p>
+ * Layout (big-endian): a header (magic, version, level count, index offset), the level 
+ * records, and an index with the offset of each record. A record holds the map size and 
+ * entity counts, the walls as a bitset (tile (x,y) is bit y*sizeX+x, as in Dungeon) and 
+ * the tiles of every exit, monster, reward and potion in list order.
+ * <p>
+ * Reads only use absolute positions, so an archive can be shared between threads.
+ */
+public class DungeonArchive extends AbstractList<Dungeon> implements RandomAccess {
+	static final int MAGIC = 0x44474E50;	// "DGNP"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 20;
+	static final int RECORD_HEADER_SIZE = 24;
+	
+	final MappedByteBuffer buffer;
+	final int levelCount;
+	final int indexOffset;
+	
+	DungeonArchive(MappedByteBuffer buffer, Path file) throws IOException {
+		this.buffer = buffer;
+		if(buffer.capacity()<HEADER_SIZE || buffer.getInt(0)!=MAGIC){ 
+			throw new IOException("Not a dungeon archive: "+file); 
+		}
+		if(buffer.getInt(4)!=VERSION){ 
+			throw new IOException("Unsupported dungeon archive version "+buffer.getInt(4)+": "+file); 
+		}
+		this.levelCount = buffer.getInt(8);
+		long offset = buffer.getLong(12);
+		if(levelCount<0 || offset<HEADER_SIZE || offset+8L*levelCount>buffer.capacity()){ 
+			throw new IOException("Corrupt dungeon archive index: "+file); 
+		}
+		this.indexOffset = (int)offset;
+	}
+	
+	public static DungeonArchive open(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			if(channel.size()>Integer.MAX_VALUE){ 
+				throw new IOException("Dungeon archives are limited to 2GB: "+file); 
+			}
+			// the mapping stays valid after the channel is closed
+			return new DungeonArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+		}
+	}
+	
+	@Override
+	public int size(){ return levelCount; }
+	
+	@Override
+	public Dungeon get(int index){
+		int offset = getRecordOffset(index);
+		int sizeX = buffer.getInt(offset);
+		int sizeY = buffer.getInt(offset+4);
+		int exitCount = buffer.getInt(offset+8);
+		int monsterCount = buffer.getInt(offset+12);
+		int rewardCount = buffer.getInt(offset+16);
+		int potionCount = buffer.getInt(offset+20);
+		Dungeon result = new Dungeon(sizeX, sizeY);
+		int position = offset+RECORD_HEADER_SIZE;
+		int words = (sizeX*sizeY+63)>>>6;
+		for(int w=0;w<words;w++){
+			long word = buffer.getLong(position);
+			position += 8;
+			while(word!=0){
+				int tile = (w<<6)+Long.numberOfTrailingZeros(word);
+				result.impassable[tile%sizeX][tile/sizeX] = true;
+				word &= word-1;
+			}
+		}
+		position = readPoints(result.exits, exitCount, sizeX, position);
+		position = readPoints(result.monsters, monsterCount, sizeX, position);
+		position = readPoints(result.rewards, rewardCount, sizeX, position);
+		readPoints(result.potions, potionCount, sizeX, position);
+		result.entityBitsDirty = true;
+		return result;
+	}
+	
+	public int getMapSizeX(int index){ return buffer.getInt(getRecordOffset(index)); }
+	public int getMapSizeY(int index){ return buffer.getInt(getRecordOffset(index)+4); }
+	
+	int getRecordOffset(int index){
+		if(index<0 || index>=levelCount){ 
+			throw new IndexOutOfBoundsException("Level "+index+" of "+levelCount); 
+		}
+		return (int)buffer.getLong(indexOffset+8*index);
+	}
+	
+	int readPoints(Vector<Point2D> points, int count, int sizeX, int position){
+		points.ensureCapacity(count);
+		for(int i=0;i<count;i++){
+			int tile = buffer.getInt(position);
+			points.add(new Point2D(tile%sizeX, tile/sizeX));
+			position += 4;
+		}
+		return position;
+	}
+	
+	// ----------------------------------------------------------------
+	// WRITING
+	// ----------------------------------------------------------------
+	
+	public static void write(Path file, Iterable<? extends Dungeon> levels) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+			long[] offsets = new long[64];
+			int count = 0;
+			long position = HEADER_SIZE;
+			channel.position(position);
+			for(Dungeon level : levels){
+				if(count==offsets.length){ offsets = Arrays.copyOf(offsets, count*2); }
+				offsets[count++] = position;
+				ByteBuffer record = encode(level);
+				position += record.remaining();
+				writeFully(channel, record);
+			}
+			ByteBuffer index = ByteBuffer.allocate(8*count);
+			for(int i=0;i<count;i++){ index.putLong(offsets[i]); }
+			index.flip();
+			writeFully(channel, index);
+			if(position+8L*count>Integer.MAX_VALUE){ 
+				throw new IOException("Dungeon archives are limited to 2GB: "+file); 
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(count).putLong(position);
+			header.flip();
+			channel.position(0);
+			writeFully(channel, header);
+		}
+	}
+	
+	static ByteBuffer encode(Dungeon level){
+		int sizeX = level.getMapSizeX();
+		int sizeY = level.getMapSizeY();
+		int words = (sizeX*sizeY+63)>>>6;
+		int entities = level.exits.size()+level.monsters.size()+level.rewards.size()+level.potions.size();
+		ByteBuffer result = ByteBuffer.allocate(RECORD_HEADER_SIZE+8*words+4*entities);
+		result.putInt(sizeX).putInt(sizeY);
+		result.putInt(level.exits.size()).putInt(level.monsters.size()).putInt(level.rewards.size()).putInt(level.potions.size());
+		long[] walls = new long[words];
+		for(int x=0;x<sizeX;x++){
+			for(int y=0;y<sizeY;y++){
+				if(level.impassable[x][y]){ Dungeon.setBit(walls, level.getTileIndex(x,y)); }
+			}
+		}
+		for(int w=0;w<words;w++){ result.putLong(walls[w]); }
+		putPoints(result, level, level.exits);
+		putPoints(result, level, level.monsters);
+		putPoints(result, level, level.rewards);
+		putPoints(result, level, level.potions);
+		result.flip();
+		return result;
+	}
+	
+	static void putPoints(ByteBuffer buffer, Dungeon level, Vector<Point2D> points){
+		for(int i=0;i<points.size();i++){
+			buffer.putInt(level.getTileIndex((int)(points.get(i).x), (int)(points.get(i).y)));
+		}
+	}
+	
+	static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){ channel.write(buffer); }
+	}
+}
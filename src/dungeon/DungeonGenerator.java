@@ -0,0 +1,111 @@
+package dungeon;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import util.image.processing.BaseImageProcessing;
+import util.math2d.IntGrid;
+import util.math2d.Point2D;
+import util.statics.RandomNumberManager;
+
+/**
+ * Generates random dungeons that are connected by construction: walls are scattered first, 
+ * the passable tiles are labelled once (union-find, see BaseImageProcessing.labelSegments) 
+ * and every exit, monster, reward and potion is then placed on distinct tiles of the largest 
+ * segment. No pathfinding is needed to validate the result, and a new wall layout is only 
+ * rolled in the rare case that the largest segment cannot hold all entities.
+ */
+public class DungeonGenerator {
+	// densities of the original 12x12 random dungeons (25 walls, 9 monsters, 6 rewards, 4 potions)
+	static final double WALL_DENSITY = 25/144.0;
+	static final double MONSTER_DENSITY = 9/144.0;
+	static final double REWARD_DENSITY = 6/144.0;
+	static final double POTION_DENSITY = 4/144.0;
+	
+	int sizeX, sizeY;
+	int wallCount;
+	int exitCount = 2;	// entrance and exit
+	int monsterCount, rewardCount, potionCount;
+	
+	public DungeonGenerator(int sizeX, int sizeY, int wallCount, int monsterCount, int rewardCount, int potionCount){
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.wallCount = wallCount;
+		this.monsterCount = monsterCount;
+		this.rewardCount = rewardCount;
+		this.potionCount = potionCount;
+	}
+	
+	/**
+	 * A generator for any size, keeping the densities of the original 12x12 random dungeons.
+	 */
+	public static DungeonGenerator forSize(int sizeX, int sizeY){
+		int tiles = sizeX*sizeY;
+		return new DungeonGenerator(sizeX, sizeY, 
+				(int)Math.round(tiles*WALL_DENSITY), (int)Math.round(tiles*MONSTER_DENSITY), 
+				(int)Math.round(tiles*REWARD_DENSITY), (int)Math.round(tiles*POTION_DENSITY));
+	}
+	
+	public Dungeon generate(){ return generate(new Random(RandomNumberManager.getRandomInt())); }
+	
+	public Dungeon generate(Random random){
+		int entities = exitCount+monsterCount+rewardCount+potionCount;
+		if(entities>sizeX*sizeY){ 
+			throw new IllegalArgumentException("Cannot place "+entities+" entities in a "+sizeX+"x"+sizeY+" dungeon");
+		}
+		while(true){
+			Dungeon result = new Dungeon(sizeX, sizeY);
+			for(int i=0;i<wallCount;i++){
+				result.impassable[random.nextInt(sizeX)][random.nextInt(sizeY)]=true;
+			}
+			int[] tiles = getLargestSegment(result);
+			if(tiles.length<entities){ continue; }
+			// partial Fisher-Yates shuffle: the first 'entities' tiles end up distinct and random
+			for(int i=0;i<entities;i++){
+				int j = i+random.nextInt(tiles.length-i);
+				int temp = tiles[i];
+				tiles[i] = tiles[j];
+				tiles[j] = temp;
+			}
+			int next = 0;
+			for(int i=0;i<exitCount;i++){ result.exits.add(toPoint(tiles[next++])); }
+			for(int i=0;i<monsterCount;i++){ result.monsters.add(toPoint(tiles[next++])); }
+			for(int i=0;i<rewardCount;i++){ result.rewards.add(toPoint(tiles[next++])); }
+			for(int i=0;i<potionCount;i++){ result.potions.add(toPoint(tiles[next++])); }
+			result.entityBitsDirty = true;
+			return result;
+		}
+	}
+	
+	/**
+	 * Generates count dungeons in parallel. Dungeon i only depends on seed and i, so 
+	 * the batch is reproducible regardless of how the work is scheduled.
+	 */
+	public Dungeon[] generateBatch(long seed, int count){
+		Dungeon[] result = new Dungeon[count];
+		IntStream.range(0, count).parallel().forEach(i -> result[i] = generate(new Random(RandomNumberManager.mixSeed(seed, i))));
+		return result;
+	}
+	
+	/**
+	 * @return tiles (as y*sizeX+x) of the largest 4-connected passable segment
+	 */
+	int[] getLargestSegment(Dungeon dungeon){
+		IntGrid labels = BaseImageProcessing.labelSegments(dungeon.getPassableArray(), 0);
+		int[] sizes = new int[labels.size()+1];
+		int largest = 0;
+		for(int i=0;i<labels.data.length;i++){
+			int label = labels.data[i];
+			if(label>0 && ++sizes[label]>sizes[largest]){ largest = label; }
+		}
+		int[] result = new int[sizes[largest]];
+		if(largest==0){ return result; }
+		int next = 0;
+		for(int i=0;i<labels.data.length;i++){
+			if(labels.data[i]==largest){ result[next++] = i; }
+		}
+		return result;
+	}
+	
+	Point2D toPoint(int tile){ return new Point2D(tile%sizeX, tile/sizeX); }
+}
@@ -1,11 +1,21 @@
 package dungeon;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.Arrays;
 import java.util.Vector;
 import util.math2d.Point2D;
 
 import dungeon.Dungeon;
 
 public class DungeonLoader {
+	/**
+	 * Legacy string loader: the last line is treated as a footer (e.g. the hit points 
+	 * line of PlayMap.toASCII) and is not part of the map.
+	 */
 	public static Dungeon loadAsciiDungeon(String asciimap){
 		String[] lines = asciimap.split("\n");
 		Dungeon result = new Dungeon(lines[0].length(),lines.length-1);
@@ -42,14 +52,131 @@ public class DungeonLoader {
 		return result;
 	}
 	
+	public static Dungeon loadAsciiDungeon(Path file) throws IOException {
+		return loadAsciiDungeon(ByteBuffer.wrap(Files.readAllBytes(file)));
+	}
+	
+	/**
+	 * Single pass byte-level parser for ASCII maps (one row per line, '\n' or '\r\n' line ends, 
+	 * leading and trailing empty lines allowed). Walls and entities are stored directly, without the 
+	 * occupancy checks of addMonster() etc. since every tile holds a single character; 
+	 * 'E' exits come first, followed by 'X' exits, both in reading order.
+	 * @throws IllegalArgumentException for an empty map, rows of different width, 
+	 * empty rows inside the map or unknown tiles
+	 */
+	public static Dungeon loadAsciiDungeon(ByteBuffer buffer){
+		int width = -1;
+		int x = 0, y = 0;
+		int emptyRows = 0;
+		int[] walls = new int[64];	// x,y pairs
+		int wallCount = 0;
+		Vector<Point2D> exits = new Vector<Point2D>();
+		Vector<Point2D> laterExits = new Vector<Point2D>();
+		Vector<Point2D> monsters = new Vector<Point2D>();
+		Vector<Point2D> rewards = new Vector<Point2D>();
+		Vector<Point2D> potions = new Vector<Point2D>();
+		while(true){
+			int tile = buffer.hasRemaining() ? buffer.get() : '\n';
+			if(tile=='\r'){ continue; }
+			if(tile=='\n'){
+				if(x==0){
+					if(y>0){ emptyRows++; }	// empty lines before the first row are skipped
+				} else {
+					if(emptyRows>0){ throw malformedRow(y+1, "empty row inside the map"); }
+					if(width==-1){ width = x; }
+					if(x!=width){ throw malformedRow(y+1, "expected "+width+" tiles but found "+x); }
+					x = 0;
+					y++;
+				}
+				if(!buffer.hasRemaining()){ break; }
+				continue;
+			}
+			if(emptyRows>0){ throw malformedRow(y+1, "empty row inside the map"); }
+			if(width!=-1 && x>=width){ throw malformedRow(y+1, "expected "+width+" tiles but found more"); }
+			switch(tile){
+				case '.': break;
+				case '#': 
+					if(wallCount+2>walls.length){ walls = Arrays.copyOf(walls, walls.length*2); }
+					walls[wallCount++] = x;
+					walls[wallCount++] = y;
+					break;
+				case 'm': monsters.add(new Point2D(x,y)); break;
+				case 'r': rewards.add(new Point2D(x,y)); break;
+				case 'p': potions.add(new Point2D(x,y)); break;
+				case 'E': exits.add(new Point2D(x,y)); break;
+				case 'X': laterExits.add(new Point2D(x,y)); break;
+				default: throw malformedRow(y+1, "unknown tile '"+(char)(tile&0xFF)+"' at column "+(x+1));
+			}
+			x++;
+		}
+		if(y==0){ throw new IllegalArgumentException("Empty dungeon map"); }
+		Dungeon result = new Dungeon(width, y);
+		for(int i=0;i<wallCount;i+=2){ result.impassable[walls[i]][walls[i+1]] = true; }
+		exits.addAll(laterExits);
+		result.exits = exits;
+		result.monsters = monsters;
+		result.rewards = rewards;
+		result.potions = potions;
+		result.entityBitsDirty = true;
+		return result;
+	}
+	
+	/**
+	 * Opens a packed level archive (see DungeonArchive); levels are decoded when accessed.
+	 */
+	public static DungeonArchive loadArchive(Path file) throws IOException {
+		return DungeonArchive.open(file);
+	}
+	
+	/**
+	 * Packs every .txt map of a folder, in file name order, into a level archive.
+	 * @return the number of levels packed
+	 */
+	public static int packAsciiDungeons(Path folder, Path archive) throws IOException {
+		Vector<Path> files = new Vector<Path>();
+		try(Stream<Path> list = Files.list(folder)){
+			list.filter(file -> file.toString().endsWith(".txt")).sorted().forEach(files::add);
+		}
+		Vector<Dungeon> levels = new Vector<Dungeon>(files.size());
+		for(int i=0;i<files.size();i++){ levels.add(loadAsciiDungeon(files.get(i))); }
+		DungeonArchive.write(archive, levels);
+		return levels.size();
+	}
+	
+	static IllegalArgumentException malformedRow(int row, String reason){
+		return new IllegalArgumentException("Malformed dungeon row "+row+": "+reason);
+	}
+	
+	/**
+	 * Writes a dungeon in the format read by loadAsciiDungeon(Path): the first exit is the entrance ('E'), 
+	 * any other exit is written as 'X', and the map ends with an empty line like the shipped maps.
+	 */
+	public static String toAsciiDungeon(Dungeon dungeon){
+		int sizeX = dungeon.getMapSizeX();
+		int sizeY = dungeon.getMapSizeY();
+		char[] tiles = new char[sizeX*sizeY];
+		for(int y=0;y<sizeY;y++){
+			for(int x=0;x<sizeX;x++){
+				tiles[dungeon.getTileIndex(x,y)] = dungeon.isPassable(x,y) ? '.' : '#';
+			}
+		}
+		for(int i=0;i<dungeon.getMonsterLength();i++){ tiles[toTileIndex(dungeon, dungeon.getMonster(i))] = 'm'; }
+		for(int i=0;i<dungeon.getRewardLength();i++){ tiles[toTileIndex(dungeon, dungeon.getReward(i))] = 'r'; }
+		for(int i=0;i<dungeon.getPotionLength();i++){ tiles[toTileIndex(dungeon, dungeon.getPotion(i))] = 'p'; }
+		for(int i=0;i<dungeon.getExitLength();i++){ tiles[toTileIndex(dungeon, dungeon.getExit(i))] = (i==0) ? 'E' : 'X'; }
+		StringBuilder result = new StringBuilder(sizeY*(sizeX+1)+1);
+		for(int y=0;y<sizeY;y++){
+			result.append(tiles, y*sizeX, sizeX).append('\n');
+		}
+		result.append('\n');
+		return result.toString();
+	}
+	
+	static int toTileIndex(Dungeon dungeon, Point2D point){
+		return dungeon.getTileIndex((int)(point.x), (int)(point.y));
+	}
+	
 	public Dungeon randomizeDungeon(){
-		Dungeon tm;
-		do{
-			tm = new Dungeon(12,12);
-			tm.randomizeChunks(25);
-			tm.randomize(2, 9, 6, 4);
-			tm.finalizeSketch();
-		} while(tm.getPaths().getDisconnectedPaths()>0 || tm.getExitLength()<2);
-		return tm;
+		return new DungeonGenerator(12,12,25,9,6,4).generate();
 	}
 }
@@ -14,9 +14,25 @@ import util.math2d.Vector2D;
 
 import libraries.PathLibrary;
 
+import util.metrics.LatencyHistogram;
+import util.metrics.Metrics;
+
 public class DungeonPaths {
+	static final int[] STEP_X = {0,1,0,-1};	// up, right, down, left
+	static final int[] STEP_Y = {-1,0,1,0};
+	
+	static final LatencyHistogram PATH_TIME = Metrics.histogram("DungeonPaths.getPath");
+	static final LatencyHistogram DISTANCE_TIME = Metrics.histogram("DungeonPaths.getDistance");
+	static final LatencyHistogram DISTANCE_FIELD_TIME = Metrics.histogram("DungeonPaths.distanceField");
+	
 	Dungeon parent;
 	Pathfinder astar;
+	Node[] nodeIndex;	// pathfinding node of tile (x,y) at y*mapSizeX+x
+	
+	// Steps from every tile to distanceTarget (-1 if unreachable), for the last target asked for.
+	// Walls do not change during play, so repeated distance queries to the same tile are lookups.
+	int[] distanceField;
+	int distanceTarget = -1;
 	
 	Vector<ArrayList> exitPaths;
 	Vector<ArrayList> exit_monsterPaths;
@@ -38,14 +54,17 @@ public class DungeonPaths {
 			n.walkable = parent.isPassable((int)(n.x), (int)(n.y));
 		}
 		astar.radialDisconnectUnwalkables();
-	}
-	
-	public Node findNode(int x, int y){
+		nodeIndex = new Node[parent.getMapSizeX()*parent.getMapSizeY()];
 		for(Object temp : astar.nodes){
 			Node n = (Node)temp;
-			if(n.x == x && n.y == y){ return n; }
+			if(parent.isWithinBounds((int)(n.x), (int)(n.y))){ nodeIndex[parent.getTileIndex((int)(n.x), (int)(n.y))] = n; }
 		}
-		return null;
+	}
+	
+	public Node findNode(int x, int y){
+		if(astar==null){ init(); }
+		if(!parent.isWithinBounds(x, y)){ return null; }
+		return nodeIndex[parent.getTileIndex(x, y)];
 	}
 	
 	public void calculateAllPaths(){
@@ -74,15 +93,21 @@ public class DungeonPaths {
 		}
 	}
 	
-	public Vector<ArrayList> getMonster_rewardPaths(){ return monster_rewardPaths; }
-	public Vector<ArrayList> getExit_monsterPaths(){ return exit_monsterPaths; }
-	public Vector<ArrayList> getExitPaths(){ return exitPaths; }
-	public int getMonster_rewardPathLength(){ return monster_rewardPaths.size(); }
-	public int getExit_monsterPathLength(){ return exit_monsterPaths.size(); }
-	public int getExitPathLength(){ return exitPaths.size(); }
-	public int getDisconnectedPaths(){ return disconnectedPaths; }
+	// all-pairs paths are only computed when first asked for (see Dungeon.finalizeSketch)
+	protected void ensureAllPaths(){ if(exitPaths==null){ calculateAllPaths(); } }
 	
-	public Pathfinder getAStar(){ return astar; }
+	public Vector<ArrayList> getMonster_rewardPaths(){ ensureAllPaths(); return monster_rewardPaths; }
+	public Vector<ArrayList> getExit_monsterPaths(){ ensureAllPaths(); return exit_monsterPaths; }
+	public Vector<ArrayList> getExitPaths(){ ensureAllPaths(); return exitPaths; }
+	public int getMonster_rewardPathLength(){ ensureAllPaths(); return monster_rewardPaths.size(); }
+	public int getExit_monsterPathLength(){ ensureAllPaths(); return exit_monsterPaths.size(); }
+	public int getExitPathLength(){ ensureAllPaths(); return exitPaths.size(); }
+	public int getDisconnectedPaths(){ ensureAllPaths(); return disconnectedPaths; }
+	
+	public Pathfinder getAStar(){ 
+		if(astar==null){ init(); }
+		return astar; 
+	}
 	
 	public Vector<ArrayList> getRewardsPathsFromMonster(int monsterIndex){
 		Vector<ArrayList> result = new Vector<ArrayList>();
@@ -90,6 +115,7 @@ public class DungeonPaths {
 			System.out.println("Base index out of bounds");
 			return result;
 		}
+		ensureAllPaths();
 		int monsterX = (int)(parent.monsters.get(monsterIndex).x);
 		int monsterY = (int)(parent.monsters.get(monsterIndex).y);
 		for(int i=0;i<monster_rewardPaths.size();i++){
@@ -106,6 +132,7 @@ public class DungeonPaths {
 			System.out.println("Resource index out of bounds");
 			return result;
 		}
+		ensureAllPaths();
 		int rewardX = (int)(parent.rewards.get(rewardIndex).x);
 		int rewardY = (int)(parent.rewards.get(rewardIndex).y);
 		for(int i=0;i<monster_rewardPaths.size();i++){
@@ -125,6 +152,7 @@ public class DungeonPaths {
 			System.out.println("Reward index out of bounds");
 			return null;
 		}
+		ensureAllPaths();
 		int monsterX = (int)(parent.monsters.get(monsterIndex).x);
 		int monsterY = (int)(parent.monsters.get(monsterIndex).y);
 		int rewardX = (int)(parent.rewards.get(rewardIndex).x);
@@ -149,11 +177,14 @@ public class DungeonPaths {
 		return getPath(x1,y1,(int)(p2.x),(int)(p2.y));
 	}
 	public ArrayList getPath(int x1,int y1,int x2,int y2){ 
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		if(astar==null){ init(); }
 		ArrayList result = astar.aStar(findNode(x1,y1),findNode(x2,y2));
-		if(PathLibrary.hasStart(result,x2,y2) && PathLibrary.hasEnd(result,x1,y1)){ 
-			return result;
+		if(!PathLibrary.hasStart(result,x2,y2) || !PathLibrary.hasEnd(result,x1,y1)){ 
+			result = null;
 		}
-		return null; 
+		if(Metrics.ENABLED){ PATH_TIME.record(System.nanoTime()-start); }
+		return result; 
 	}
 	
 	public double getDistance(Point2D p1, Point2D p2){
@@ -166,10 +197,68 @@ public class DungeonPaths {
 		return getDistance(x1,y1,(int)(p2.x),(int)(p2.y));
 	}
 	public double getDistance(int x1,int y1,int x2,int y2){ 
-		ArrayList result = astar.aStar(findNode(x1,y1),findNode(x2,y2));
-		if(PathLibrary.hasStart(result,x2,y2) && PathLibrary.hasEnd(result,x1,y1)){ 
-			return PathLibrary.calculateDistance(result);
+		if(!Metrics.ENABLED){ return calculateDistance(x1,y1,x2,y2); }
+		long start = System.nanoTime();
+		double result = calculateDistance(x1,y1,x2,y2);
+		DISTANCE_TIME.record(System.nanoTime()-start);
+		return result;
+	}
+	
+	protected double calculateDistance(int x1,int y1,int x2,int y2){ 
+		// 4-connected unit grid: the breadth-first step count is the length of the A* path
+		if(!parent.isWithinBounds(x1,y1) || !parent.isWithinBounds(x2,y2)){ return Double.NaN; }
+		if(x1==x2 && y1==y2){ return 0; }
+		int[] field = getDistanceField(x2,y2);
+		int steps = field[parent.getTileIndex(x1,y1)];
+		if(!parent.isPassable(x1,y1)){
+			// like A*, a path may start on a wall as long as it leaves through a passable neighbour
+			for(int i=0;i<4;i++){
+				int x = x1+STEP_X[i];
+				int y = y1+STEP_Y[i];
+				if(parent.isPassable(x,y) && field[parent.getTileIndex(x,y)]>=0 && (steps<0 || field[parent.getTileIndex(x,y)]+1<steps)){ 
+					steps = field[parent.getTileIndex(x,y)]+1; 
+				}
+			}
 		}
-		return Double.NaN; 
+		if(steps<0){ return Double.NaN; }
+		return steps;
+	}
+	
+	/**
+	 * Steps from every tile (at y*mapSizeX+x) to tile (x,y), or -1 for tiles that cannot reach it. 
+	 * The result is cached and shared: callers must not modify it.
+	 */
+	public synchronized int[] getDistanceField(int x, int y){
+		int target = parent.getTileIndex(x,y);
+		if(distanceField==null || distanceTarget!=target){
+			long start = Metrics.ENABLED ? System.nanoTime() : 0;
+			distanceField = calculateDistanceField(x,y);
+			distanceTarget = target;
+			if(Metrics.ENABLED){ DISTANCE_FIELD_TIME.record(System.nanoTime()-start); }
+		}
+		return distanceField;
+	}
+	
+	protected int[] calculateDistanceField(int x, int y){
+		int sizeX = parent.getMapSizeX();
+		int sizeY = parent.getMapSizeY();
+		int[] result = new int[sizeX*sizeY];
+		Arrays.fill(result, -1);
+		if(!parent.isPassable(x,y)){ return result; }
+		int[] queue = new int[result.length];
+		int head = 0, tail = 0;
+		queue[tail++] = parent.getTileIndex(x,y);
+		result[queue[0]] = 0;
+		while(head<tail){
+			int index = queue[head++];
+			int cx = index%sizeX;
+			int cy = index/sizeX;
+			int steps = result[index]+1;
+			if(cy>0 && result[index-sizeX]<0 && parent.isPassable(cx,cy-1)){ result[index-sizeX] = steps; queue[tail++] = index-sizeX; }
+			if(cx<sizeX-1 && result[index+1]<0 && parent.isPassable(cx+1,cy)){ result[index+1] = steps; queue[tail++] = index+1; }
+			if(cy<sizeY-1 && result[index+sizeX]<0 && parent.isPassable(cx,cy+1)){ result[index+sizeX] = steps; queue[tail++] = index+sizeX; }
+			if(cx>0 && result[index-1]<0 && parent.isPassable(cx-1,cy)){ result[index-1] = steps; queue[tail++] = index-1; }
+		}
+		return result;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+package dungeon.play;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import util.math2d.Point2D;
+
+/**
+ * The monsters, treasures or potions of a game as parallel primitive arrays: tile coordinates, 
+ * one value per entity (damage of a monster, score bonus of a treasure, healing of a potion) 
+ * an alive bit per entity index and an optional flag bit per entity (overheal for potions). 
+ * Positions, values, flags and the tile lookup never change while playing, so copies share them 
+ * and only duplicate the alive bits. A new game rewrites the values 
+ * and alive bits in place, once the values are no longer shared.
+ */
+class EntityTable {
+	final int[] x, y;
+	int[] values;
+	boolean sharedValues;	// values also referenced by a copy
+	final int[] slots;	// entity index+1 at tile index y*mapSizeX+x, 0 if none
+	final long[] alive;
+	final long[] flags;	// null if no entity is flagged
+	int deadCount;
+	
+	EntityTable(int[] x, int[] y, int[] values, long[] flags, int[] slots, long[] alive, int deadCount){
+		this.x = x;
+		this.y = y;
+		this.values = values;
+		this.flags = flags;
+		this.slots = slots;
+		this.alive = alive;
+		this.deadCount = deadCount;
+	}
+	
+	/** @return a table of live entities at the given positions */
+	static EntityTable of(Vector<Point2D> positions, int[] values, int mapSizeX, int mapSizeY){
+		int size = positions.size();
+		int[] x = new int[size];
+		int[] y = new int[size];
+		for(int i=0;i<size;i++){
+			x[i] = (int)positions.get(i).x;
+			y[i] = (int)positions.get(i).y;
+		}
+		return new EntityTable(x, y, values, null, indexTiles(x, y, mapSizeX, mapSizeY), allAlive(size), 0);
+	}
+	
+	/** @return a table of the given characters, with their positions, values, flags (or null) and alive state */
+	static EntityTable ofCharacters(List<? extends GameCharacter> chars, int[] values, long[] flags, int mapSizeX, int mapSizeY){
+		int size = chars.size();
+		int[] x = new int[size];
+		int[] y = new int[size];
+		long[] alive = new long[(size+63)>>>6];
+		int deadCount = 0;
+		for(int i=0;i<size;i++){
+			x[i] = chars.get(i).getX();
+			y[i] = chars.get(i).getY();
+			if(chars.get(i).isAlive()){ 
+				alive[i>>>6] |= 1L<<i; 
+			} else { 
+				deadCount++; 
+			}
+		}
+		return new EntityTable(x, y, values, flags, indexTiles(x, y, mapSizeX, mapSizeY), alive, deadCount);
+	}
+	
+	static int[] indexTiles(int[] x, int[] y, int mapSizeX, int mapSizeY){
+		int[] result = new int[mapSizeX*mapSizeY];
+		for(int i=x.length-1;i>=0;i--){ result[y[i]*mapSizeX+x[i]] = i+1; }
+		return result;
+	}
+	
+	static long[] allAlive(int size){
+		long[] result = new long[(size+63)>>>6];
+		fillAlive(result, size);
+		return result;
+	}
+	
+	static void fillAlive(long[] alive, int size){
+		Arrays.fill(alive, -1L);
+		if((size & 63)!=0){ alive[alive.length-1] = (1L<<size)-1; }
+	}
+	
+	EntityTable copy(){ 
+		sharedValues = true;
+		EntityTable copy = new EntityTable(x, y, values, flags, slots, alive.clone(), deadCount);
+		copy.sharedValues = true;
+		return copy;
+	}
+	
+	/** @return the values, copied first if a copy of this table still shares them */
+	int[] getWritableValues(){
+		if(sharedValues){
+			values = values.clone();
+			sharedValues = false;
+		}
+		return values;
+	}
+	
+	/** Brings every entity back to life. */
+	void revive(){
+		fillAlive(alive, x.length);
+		deadCount = 0;
+	}
+	
+	boolean hasPositions(Vector<Point2D> positions){
+		if(positions.size()!=x.length){ return false; }
+		for(int i=0;i<x.length;i++){
+			if(x[i]!=(int)positions.get(i).x || y[i]!=(int)positions.get(i).y){ return false; }
+		}
+		return true;
+	}
+	
+	int size(){ return x.length; }
+	int getAliveCount(){ return x.length-deadCount; }
+	boolean isAlive(int index){ return (alive[index>>>6] & (1L<<index))!=0; }
+	boolean isFlagged(int index){ return flags!=null && (flags[index>>>6] & (1L<<index))!=0; }
+	
+	void kill(int index){
+		if(!isAlive(index)){ return; }
+		alive[index>>>6] &= ~(1L<<index);
+		deadCount++;
+	}
+	
+	/** @return index of the live entity at the tile, -1 if none */
+	int getAliveIndex(int tile, int tileX, int tileY){
+		int index = slots[tile]-1;
+		if(index>=0 && isAlive(index)){ return index; }
+		if(index<0){ return -1; }
+		// only reachable when several entities share a tile
+		for(int i=0;i<x.length;i++){
+			if(x[i]==tileX && y[i]==tileY && isAlive(i)){ return i; }
+		}
+		return -1;
+	}
+	
+	/** Sets the tile bits (y*mapSizeX+x) of the live and of the dead entities. */
+	void fillTileBits(long[] aliveTiles, long[] deadTiles, int mapSizeX){
+		for(int i=0;i<x.length;i++){
+			int tile = y[i]*mapSizeX+x[i];
+			if(isAlive(i)){
+				aliveTiles[tile>>>6] |= 1L<<tile;
+			} else {
+				deadTiles[tile>>>6] |= 1L<<tile;
+			}
+		}
+	}
+	
+	boolean[][] toArray(boolean aliveState, int mapSizeX, int mapSizeY){
+		boolean[][] result = new boolean[mapSizeX][mapSizeY];
+		for(int i=0;i<x.length;i++){
+			if(isAlive(i)==aliveState){ result[x[i]][y[i]] = true; }
+		}
+		return result;
+	}
+}
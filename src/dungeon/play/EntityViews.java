@@ -0,0 +1,128 @@
+package dungeon.play;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import controllers.Controller;
+
+import util.math2d.Point2D;
+
+/**
+ * Read-only character views of an EntityTable, returned by PlayMap.getMonsterChars() etc.
+ * A view reads the value and alive state of its entity from the table on every call, so the
+ * views follow the game as it is played and only need rebuilding when the table is replaced.
+ * The lists and every method that would change an entity (kill, damage, setDamage, collide...)
+ * throw UnsupportedOperationException: entities are changed by setting new characters with
+ * PlayMap.setMonsterChars() etc. clone() returns a detached character with the current state.
+ */
+final class EntityViews {
+	private EntityViews(){}
+
+	static List<Monster> monsters(EntityTable table){
+		Monster[] views = new Monster[table.size()];
+		for(int i=0;i<views.length;i++){ views[i] = new MonsterView(table, i); }
+		return Collections.unmodifiableList(Arrays.asList(views));
+	}
+
+	static List<Reward> rewards(EntityTable table){
+		Reward[] views = new Reward[table.size()];
+		for(int i=0;i<views.length;i++){ views[i] = new RewardView(table, i); }
+		return Collections.unmodifiableList(Arrays.asList(views));
+	}
+
+	static List<Powerup> potions(EntityTable table){
+		Powerup[] views = new Powerup[table.size()];
+		for(int i=0;i<views.length;i++){ views[i] = new PotionView(table, i); }
+		return Collections.unmodifiableList(Arrays.asList(views));
+	}
+
+	static UnsupportedOperationException readOnly(){
+		return new UnsupportedOperationException("Entity views are read-only, set new characters on the PlayMap instead");
+	}
+
+	static <T extends GameCharacter> T detach(T copy, EntityTable table, int index){
+		if(!table.isAlive(index)){ copy.kill(); }
+		return copy;
+	}
+
+	static final class MonsterView extends Monster {
+		final EntityTable table;
+		final int index;
+
+		MonsterView(EntityTable table, int index){
+			super(new Point2D(table.x[index], table.y[index]), "monster", 0);
+			this.table = table;
+			this.index = index;
+		}
+
+		@Override public Monster clone(){ return detach(new Monster(getPosition(), name, getDamage()), table, index); }
+		@Override public int getDamage(){ return table.values[index]; }
+		@Override public boolean isAlive(){ return table.isAlive(index); }
+		@Override public int getHitpoints(){ return isAlive() ? startingHitpoints : 0; }
+
+		@Override public void setDamage(int value){ throw readOnly(); }
+		@Override public int collide(Hero hero){ throw readOnly(); }
+		@Override public void kill(){ throw readOnly(); }
+		@Override public void damage(int damage){ throw readOnly(); }
+		@Override public void setHitpoints(int value){ throw readOnly(); }
+		@Override public void setPosition(int x, int y){ throw readOnly(); }
+		@Override public void setPosition(Point2D value){ throw readOnly(); }
+		@Override public void reset(){ throw readOnly(); }
+		@Override public void reset(Point2D startingPos, int startingHitpoints){ throw readOnly(); }
+		@Override public void setController(Controller controller){ throw readOnly(); }
+	}
+
+	static final class RewardView extends Reward {
+		final EntityTable table;
+		final int index;
+
+		RewardView(EntityTable table, int index){
+			super(new Point2D(table.x[index], table.y[index]), "treasure", 0);
+			this.table = table;
+			this.index = index;
+		}
+
+		@Override public Reward clone(){ return detach(new Reward(getPosition(), name, getTreasureBonus()), table, index); }
+		@Override int getTreasureBonus(){ return table.values[index]; }
+		@Override public boolean isAlive(){ return table.isAlive(index); }
+		@Override public int getHitpoints(){ return isAlive() ? startingHitpoints : 0; }
+
+		@Override public int collide(Hero hero){ throw readOnly(); }
+		@Override public void kill(){ throw readOnly(); }
+		@Override public void damage(int damage){ throw readOnly(); }
+		@Override public void setHitpoints(int value){ throw readOnly(); }
+		@Override public void setPosition(int x, int y){ throw readOnly(); }
+		@Override public void setPosition(Point2D value){ throw readOnly(); }
+		@Override public void reset(){ throw readOnly(); }
+		@Override public void reset(Point2D startingPos, int startingHitpoints){ throw readOnly(); }
+		@Override public void setController(Controller controller){ throw readOnly(); }
+	}
+
+	static final class PotionView extends Powerup {
+		final EntityTable table;
+		final int index;
+
+		PotionView(EntityTable table, int index){
+			super(new Point2D(table.x[index], table.y[index]), "potion", 0);
+			this.table = table;
+			this.index = index;
+		}
+
+		@Override public Powerup clone(){ return detach(new Powerup(getPosition(), name, getHealing(), isOverheal()), table, index); }
+		@Override int getHealing(){ return table.values[index]; }
+		@Override boolean isOverheal(){ return table.isFlagged(index); }
+		@Override public boolean isAlive(){ return table.isAlive(index); }
+		@Override public int getHitpoints(){ return isAlive() ? startingHitpoints : 0; }
+
+		@Override public int collide(Hero hero){ throw readOnly(); }
+		@Override public void kill(){ throw readOnly(); }
+		@Override public void damage(int damage){ throw readOnly(); }
+		@Override public void setHitpoints(int value){ throw readOnly(); }
+		@Override public void setPosition(int x, int y){ throw readOnly(); }
+		@Override public void setPosition(Point2D value){ throw readOnly(); }
+		@Override public void reset(){ throw readOnly(); }
+		@Override public void reset(Point2D startingPos, int startingHitpoints){ throw readOnly(); }
+		@Override public void setController(Controller controller){ throw readOnly(); }
+	}
+}
@@ -42,10 +42,19 @@ public class GameCharacter {
 	public Controller getController(){ return this.controller; }
 	
 	public void reset(){
-		this.position = new Point2D(startingPos);
+		this.position.x = startingPos.x;
+		this.position.y = startingPos.y;
 		this.hitpoints = startingHitpoints;
 	}
 	
+	/** Resets the character to a new starting position and hitpoints, without allocating. */
+	public void reset(Point2D startingPos, int startingHitpoints){
+		this.startingPos.x = startingPos.x;
+		this.startingPos.y = startingPos.y;
+		this.startingHitpoints = startingHitpoints;
+		reset();
+	}
+	
 	public void damage(int damage){
 		if(hitpoints>0){ hitpoints-=damage; }
 		hitpoints = Math.max(0,hitpoints);
@@ -0,0 +1,9 @@
+package dungeon.play;
+
+/**
+ * Notified of every event of a PlayMap as it happens (see GameEvents for the codes). 
+ * Listeners are not copied to clones of the game.
+ */
+public interface GameEventListener {
+	void onGameEvent(PlayMap map, int code, int entity, int hpDelta, int step);
+}
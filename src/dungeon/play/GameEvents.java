@@ -0,0 +1,89 @@
+package dungeon.play;
+
+import java.util.Arrays;
+
+/**
+ * Ring buffer of the latest events of a game, kept as primitives (event code, entity index, 
+ * HP change of the hero, step) so that playing creates no strings. The English description 
+ * of an event is only built by format(), e.g. for PlayMap.getLastEvent().
+ */
+public class GameEvents {
+	public static final int MESSAGE = 0;	// free text logged with PlayMap.logEvent
+	public static final int MONSTER = 1;	// the hero kills a monster and loses its damage
+	public static final int MONSTER_FATAL = 2;	// the same, but the hero dies
+	public static final int TREASURE = 3;
+	public static final int POTION = 4;	// the HP change is the healing
+	public static final int EXIT = 5;
+	
+	public static final int DEFAULT_CAPACITY = 32;
+	
+	final int[] codes, entities, hpDeltas, steps;
+	final String[] messages;	// only set for MESSAGE events
+	long total = 0;
+	
+	public GameEvents(){ this(DEFAULT_CAPACITY); }
+	
+	public GameEvents(int capacity){
+		codes = new int[capacity];
+		entities = new int[capacity];
+		hpDeltas = new int[capacity];
+		steps = new int[capacity];
+		messages = new String[capacity];
+	}
+	
+	// copies the slots as they are, since getSlot() finds the events from total
+	private GameEvents(GameEvents source){
+		codes = source.codes.clone();
+		entities = source.entities.clone();
+		hpDeltas = source.hpDeltas.clone();
+		steps = source.steps.clone();
+		messages = source.messages.clone();
+		total = source.total;
+	}
+	
+	public GameEvents copy(){ return new GameEvents(this); }
+	
+	public void add(int code, int entity, int hpDelta, int step, String message){
+		int slot = (int)(total%codes.length);
+		codes[slot] = code;
+		entities[slot] = entity;
+		hpDeltas[slot] = hpDelta;
+		steps[slot] = step;
+		messages[slot] = message;
+		total++;
+	}
+	
+	public void clear(){ 
+		total = 0; 
+		Arrays.fill(messages, null);
+	}
+	
+	/** @return number of events still held (the oldest ones are overwritten) */
+	public int getCount(){ return (int)Math.min(total, codes.length); }
+	/** @return number of events since the game started */
+	public long getTotal(){ return total; }
+	
+	// back is 0 for the latest event, 1 for the one before, etc.
+	int getSlot(int back){
+		if(back<0 || back>=getCount()){ throw new IndexOutOfBoundsException("Event "+back+" of "+getCount()); }
+		return (int)((total-1-back)%codes.length);
+	}
+	
+	public int getCode(int back){ return codes[getSlot(back)]; }
+	public int getEntity(int back){ return entities[getSlot(back)]; }
+	public int getHpDelta(int back){ return hpDeltas[getSlot(back)]; }
+	public int getStep(int back){ return steps[getSlot(back)]; }
+	
+	/** @return description of an event of the given game, as the string event log used to hold it */
+	public String format(PlayMap map, int back){
+		int slot = getSlot(back);
+		switch(codes[slot]){
+			case MONSTER: return map.getMonsterChar(entities[slot]).describeCollision(-hpDeltas[slot], true);
+			case MONSTER_FATAL: return map.getMonsterChar(entities[slot]).describeCollision(-hpDeltas[slot], false);
+			case TREASURE: return map.getRewardChar(entities[slot]).describeCollision(hpDeltas[slot]);
+			case POTION: return map.getPotionChar(entities[slot]).describeCollision(hpDeltas[slot]);
+			case EXIT: return "Hero reaches the exit and completes the level.";
+			default: return messages[slot];
+		}
+	}
+}
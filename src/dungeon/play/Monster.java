@@ -39,17 +39,29 @@ public class Monster extends GameCharacter {
 	public String eventCollision(GameCharacter collider){
 		if(collider instanceof Hero){ 
 			Hero hero = (Hero)collider;
-			hero.damage(damage);
-			hero.setPosition(new Point2D(position));
-            //hero.incrementMonstersKilled();
-            this.kill();
-
-			if(hero.isAlive()){
-				return "Hero is damaged by "+this.getName()+" for "+this.getDamage()+" HP.";
-			} else {
-				return "Hero is damaged by "+this.getName()+" for "+this.getDamage()+" HP and dies.";
-			}
+			int hpDelta = collide(hero);
+			return describeCollision(-hpDelta, hero.isAlive());
 		}
 		return "";
 	}
+	
+	/**
+	 * The hero steps on the monster: it deals its damage and dies. 
+	 * @return the HP change of the hero (minus the damage)
+	 */
+	public int collide(Hero hero){
+		hero.damage(damage);
+		hero.setPosition(position);
+        //hero.incrementMonstersKilled();
+        this.kill();
+		return -damage;
+	}
+	
+	public String describeCollision(int damage, boolean heroAlive){
+		if(heroAlive){
+			return "Hero is damaged by "+this.getName()+" for "+damage+" HP.";
+		} else {
+			return "Hero is damaged by "+this.getName()+" for "+damage+" HP and dies.";
+		}
+	}
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package dungeon.play;
 
+import java.util.List;
 import java.util.Vector;
+import java.util.ArrayList;
 import java.util.Arrays;
 
 import controllers.Controller;
@@ -8,6 +10,8 @@ import controllers.Controller;
 import dungeon.Dungeon;
 import libraries.PathLibrary;
 import util.math2d.Matrix2D;
+import util.metrics.LatencyHistogram;
+import util.metrics.Metrics;
 
 //import holmgard.CloningUtils;
 
@@ -37,9 +41,13 @@ public class PlayMap extends Dungeon implements Cloneable {
 	Point2D entrance;
 	//Point2D hero;
 	
-	public Vector<Reward> rewardChars;
-	public Vector<Powerup> potionChars;
-	public Vector<Monster> monsterChars;
+	// Monsters, treasures and potions as primitive tables (see EntityTable). The character 
+	// objects of getMonsterChars() etc. are read-only views of them, built on demand and 
+	// again when the tables are replaced or reset.
+	EntityTable monsterTable, rewardTable, potionTable;
+	List<Monster> monsterChars;
+	List<Reward> rewardChars;
+	List<Powerup> potionChars;
 	Hero hero;
 	
 	final int viewRange=2;
@@ -50,13 +58,25 @@ public class PlayMap extends Dungeon implements Cloneable {
 	int actionsTaken;
 	
 	int[][] viewport;
-	
-	Vector<String> actionLog;
-	Vector<String> eventLog;
+	int viewX = -1, viewY = -1;	// hero position of the last viewport, the only area set in currentView
+	
+	// Alive/dead entity bitsets plus visited and explored tiles, kept up to date while playing 
+	// (see Dungeon for the bit layout), with their counters.
+	long[] aliveMonsterBits, deadMonsterBits;
+	long[] aliveRewardBits, deadRewardBits;
+	long[] alivePotionBits, deadPotionBits;
+	long[] visitedBits, exploredBits;
+	int visitedTiles, exploredTiles;
+	
+	GameEvents events;
+	ArrayList<GameEventListener> eventListeners;	// not copied to clones
 	boolean gameHalted;
 
     Dungeon baseMap;
 
+	static final LatencyHistogram UPDATE_TIME = Metrics.histogram("PlayMap.updateGame");
+	static final LatencyHistogram CLONE_TIME = Metrics.histogram("PlayMap.clone");
+	
 	static int startingHP = 40;
 	static int combatRange = 10;
 	static int combatBaseline = 10;
@@ -68,6 +88,7 @@ public class PlayMap extends Dungeon implements Cloneable {
         this.baseMap = baseMap;
 		clearImpassable();
 		gameHalted = true;
+		events = new GameEvents();
 		for(int x=0;x<impassable.length;x++){
 			for(int y=0;y<impassable[x].length;y++){
 				this.impassable[x][y]=!baseMap.isPassable(x, y);
@@ -91,55 +112,70 @@ public class PlayMap extends Dungeon implements Cloneable {
 		}
 		
 		entrance = this.getExit(0);
-		finalizeSketch();
+		// paths are built lazily by DungeonPaths on the first query, so plays and clones 
+		// that never ask for a path do not pay for the pathfinding graph
 		resetLevel();
 	}
+	
+	// Copy of the map for clone(): walls, entities, exits, entrance and events come from the source, and the 
+	// level is not reset, since clone() copies the entity tables and bitsets of the game afterwards.
+	private PlayMap(PlayMap source){
+		super(source.mapSizeX,source.mapSizeY);
+		this.baseMap = source.baseMap;
+		for(int x=0;x<impassable.length;x++){
+			System.arraycopy(source.impassable[x], 0, this.impassable[x], 0, impassable[x].length);
+		}
+		this.monsters = copyPoints(source.monsters);
+		this.rewards = copyPoints(source.rewards);
+		this.potions = copyPoints(source.potions);
+		this.exits = copyPoints(source.exits);
+		this.entrance = new Point2D(source.entrance);
+		this.events = (source.events.getTotal()>0) ? source.events.copy() : new GameEvents();
+		if(!source.entityBitsDirty){
+			this.monsterBits = source.monsterBits.clone();
+			this.rewardBits = source.rewardBits.clone();
+			this.potionBits = source.potionBits.clone();
+			this.exitBits = source.exitBits.clone();
+			this.entityBitsDirty = false;
+		}
+	}
+	
+	static Vector<Point2D> copyPoints(Vector<Point2D> points){
+		Vector<Point2D> result = new Vector<Point2D>(points.size());
+		for(int i=0;i<points.size();i++){ result.add(new Point2D(points.get(i))); }
+		return result;
+	}
 
     @Override
     public PlayMap clone(){
-        PlayMap clone = new PlayMap(this.baseMap);
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        PlayMap clone = new PlayMap(this);
 		
 		clone.explored = Matrix2D.copy(this.explored);
 		clone.currentView = Matrix2D.copy(this.currentView);
 		clone.visited = Matrix2D.copy(this.visited);
 		clone.viewport = Matrix2D.copy(this.viewport);
+		clone.viewX = this.viewX;
+		clone.viewY = this.viewY;
+		clone.visitedBits = (this.visitedBits==null) ? null : this.visitedBits.clone();
+		clone.exploredBits = (this.exploredBits==null) ? null : this.exploredBits.clone();
+		clone.visitedTiles = this.visitedTiles;
+		clone.exploredTiles = this.exploredTiles;
 
-        Vector cloneRewards = new Vector(this.getRewardChars().size());
-        for(int i = 0; i < getRewardChars().size(); i++) {
-            cloneRewards.add(getRewardChars().get(i).clone());
-        }
-        clone.setRewardChars(cloneRewards);
+		clone.monsterTable = this.monsterTable.copy();
+		clone.rewardTable = this.rewardTable.copy();
+		clone.potionTable = this.potionTable.copy();
+		clone.aliveMonsterBits = this.aliveMonsterBits.clone();
+		clone.deadMonsterBits = this.deadMonsterBits.clone();
+		clone.aliveRewardBits = this.aliveRewardBits.clone();
+		clone.deadRewardBits = this.deadRewardBits.clone();
+		clone.alivePotionBits = this.alivePotionBits.clone();
+		clone.deadPotionBits = this.deadPotionBits.clone();
 
-        Vector cloneMonsters = new Vector(this.getMonsterChars().size());
-        for(int i = 0; i < getMonsterChars().size(); i++) {
-            cloneMonsters.add(getMonsterChars().get(i).clone());
-        }
-        clone.setMonsterChars(cloneMonsters);
-
-        Vector clonePotions = new Vector(this.getPotionChars().size());
-        for(int i = 0; i < this.getPotionChars().size(); i++) {
-            clonePotions.add(getPotionChars().get(i).clone());
-        }
-        clone.setPotionChars(clonePotions);
-
-        if(eventLog != null) {
-			Vector cloneEventLog = new Vector(eventLog.size());
-            for(int logItem = 0; logItem < eventLog.size(); logItem++){
-                cloneEventLog.add(eventLog.get(logItem));
-            }
-			clone.eventLog = cloneEventLog;
-        }
-        if(actionLog != null) {
-			Vector cloneActionLog = new Vector(actionLog.size());
-            for(int logItem = 0; logItem < actionLog.size(); logItem++){
-                cloneActionLog.add(actionLog.get(logItem));
-            }
-			clone.actionLog = cloneActionLog;
-        }
-        
 		if(hero!=null){ clone.hero = this.getHero().clone(); }
         clone.gameHalted = this.gameHalted;
 
+        if(Metrics.ENABLED){ CLONE_TIME.record(System.nanoTime()-start); }
         return clone;
     }
 
@@ -256,12 +292,30 @@ public class PlayMap extends Dungeon implements Cloneable {
 	}
 	
 	public void startGame(){
+		hero = new Hero(entrance,startingHP,"hero");
+		resetGame();
+	}
+	
+	/**
+	 * Starts a new game like startGame(), but keeps the current Hero object and reuses every 
+	 * buffer of the previous game, so playing many games in a row allocates nothing per game. 
+	 * Controllers bound to getHero() stay bound to the hero of the new game.
+	 */
+	public void restartGame(){
+		if(hero==null){ 
+			startGame();
+			return;
+		}
+		hero.reset(entrance,startingHP);
+		resetGame();
+	}
+	
+	protected void resetGame(){
 		clearExplored();
 		clearEventLog();
         clearVisited();
 		actionsTaken = 0;
-		hero = new Hero(entrance,startingHP,"hero");
-		visited[(int)(hero.getStartingPosition().x)][(int)(hero.getStartingPosition().y)]=1;
+		setVisited((int)(entrance.x),(int)(entrance.y),1);
 		resetLevel();
 		updateViewport();
 		gameHalted = false;
@@ -276,41 +330,57 @@ public class PlayMap extends Dungeon implements Cloneable {
         gameHalted = false;
     }
 	
-	public void resetLevel(){
-		this.setMonsterChars(new Vector<Monster>());
-		for(int i=0;i<super.getMonsterLength();i++){ 
-			this.getMonsterChars().add(new Monster(super.getMonster(i), "monster",combatBaseline, combatRange));
+	public void resetLevel(){ resetEntities(combatRange); }
+	
+	public void resetLevelStatic(){ resetEntities(0); }
+	
+	// Revives every entity and rolls the monsters' damage (within damageRange of combatBaseline). 
+	// The tables of the previous game are rewritten in place unless the entities were replaced.
+	protected void resetEntities(int damageRange){
+		if(monsterTable==null || !monsterTable.hasPositions(monsters)){ 
+			monsterTable = EntityTable.of(monsters, new int[monsters.size()], mapSizeX, mapSizeY); 
 		}
-		this.setRewardChars(new Vector<Reward>());
-		for(int i=0;i<super.getRewardLength();i++){ 
-			this.getRewardChars().add(new Reward(super.getReward(i), "treasure", treasureBonus));
+		if(rewardTable==null || !rewardTable.hasPositions(rewards)){ 
+			rewardTable = EntityTable.of(rewards, new int[rewards.size()], mapSizeX, mapSizeY); 
 		}
-		this.setPotionChars(new Vector<Powerup>());
-		for(int i=0;i<super.getPotionLength();i++){ 
-			this.getPotionChars().add(new Powerup(super.getPotion(i), "potion", potionHP));
+		if(potionTable==null || !potionTable.hasPositions(potions)){ 
+			potionTable = EntityTable.of(potions, new int[potions.size()], mapSizeX, mapSizeY); 
 		}
+		int[] damages = monsterTable.getWritableValues();
+		for(int i=0;i<damages.length;i++){ 
+			damages[i] = (damageRange>0) ? RandomNumberManager.getRandomInt(combatBaseline-damageRange/2, combatBaseline+damageRange/2) : combatBaseline;
+		}
+		Arrays.fill(rewardTable.getWritableValues(), treasureBonus);
+		Arrays.fill(potionTable.getWritableValues(), potionHP);
+		monsterTable.revive();
+		rewardTable.revive();
+		potionTable.revive();
+		updateEntityTiles();
 	}
 	
-	public void resetLevelStatic(){
-		this.setMonsterChars(new Vector<Monster>());
-		for(int i=0;i<super.getMonsterLength();i++){ 
-			this.getMonsterChars().add(new Monster(super.getMonster(i), "monster",combatBaseline, 0));
-		}
-		this.setRewardChars(new Vector<Reward>());
-		for(int i=0;i<super.getRewardLength();i++){ 
-			this.getRewardChars().add(new Reward(super.getReward(i), "treasure", treasureBonus));
-		}
-		this.setPotionChars(new Vector<Powerup>());
-		for(int i=0;i<super.getPotionLength();i++){ 
-			this.getPotionChars().add(new Powerup(super.getPotion(i), "potion", potionHP));
-		}
+	// rebuilds the alive/dead tile bits from the tables and drops the character views
+	protected void updateEntityTiles(){
+		aliveMonsterBits = clearBits(aliveMonsterBits);
+		deadMonsterBits = clearBits(deadMonsterBits);
+		monsterTable.fillTileBits(aliveMonsterBits, deadMonsterBits, mapSizeX);
+		aliveRewardBits = clearBits(aliveRewardBits);
+		deadRewardBits = clearBits(deadRewardBits);
+		rewardTable.fillTileBits(aliveRewardBits, deadRewardBits, mapSizeX);
+		alivePotionBits = clearBits(alivePotionBits);
+		deadPotionBits = clearBits(deadPotionBits);
+		potionTable.fillTileBits(alivePotionBits, deadPotionBits, mapSizeX);
+		monsterChars = null;
+		rewardChars = null;
+		potionChars = null;
 	}
 	
 	public void updateGame(int heroMovement){
 		if(!gameHalted){
+			long start = Metrics.ENABLED ? System.nanoTime() : 0;
 			updateHero(heroMovement);
 			updateGameState();
 			updateViewport();
+			if(Metrics.ENABLED){ UPDATE_TIME.record(System.nanoTime()-start); }
 		}
 	}
 
@@ -326,150 +396,68 @@ public class PlayMap extends Dungeon implements Cloneable {
 			int pIndex = this.getPotionIndex(cHeroX, cHeroY);
 			int mIndex = this.getMonsterIndex(cHeroX, cHeroY);
 			if(mIndex!=-1){ 
-				String event = monsterChars.get(mIndex).eventCollision(hero);
-				logEvent(event);
+				// same rules as Monster.collide
+				int damage = monsterTable.values[mIndex];
+				hero.damage(damage);
+				hero.setPosition(cHeroX,cHeroY);
+				kill(monsterTable, mIndex, aliveMonsterBits, deadMonsterBits, cHeroX, cHeroY);
+				logEvent(hero.isAlive() ? GameEvents.MONSTER : GameEvents.MONSTER_FATAL, mIndex, -damage);
 			} else if(rIndex!=-1){ 
-				String event = rewardChars.get(rIndex).eventCollision(hero);
-				logEvent(event);
+				// same rules as Reward.collide
+				hero.setPosition(cHeroX,cHeroY);
+				hero.addToScore(rewardTable.values[rIndex]);
+				kill(rewardTable, rIndex, aliveRewardBits, deadRewardBits, cHeroX, cHeroY);
+				logEvent(GameEvents.TREASURE, rIndex, 0);
 			} else if(pIndex!=-1){ 
-				String event = potionChars.get(pIndex).eventCollision(hero);
-				logEvent(event);
+				// same rules as Powerup.collide
+				hero.setPosition(cHeroX,cHeroY);
+				int healedAmount = Powerup.getHealedAmount(hero, potionTable.values[pIndex], potionTable.isFlagged(pIndex));
+				hero.damage(-healedAmount);
+				kill(potionTable, pIndex, alivePotionBits, deadPotionBits, cHeroX, cHeroY);
+				logEvent(GameEvents.POTION, pIndex, healedAmount);
 			} else if(this.isExit(cHeroX,cHeroY) && !entrance.isAt(cHeroX,cHeroY)){ 
 				hero.setPosition(cHeroX,cHeroY);
-				logEvent("Hero reaches the exit and completes the level.");
+				logEvent(GameEvents.EXIT, -1, 0);
 				gameHalted = true;
 			} else {
 				hero.setPosition(cHeroX,cHeroY);
 			}
 
             //Update visited matrix
-            visited[cHeroX][cHeroY]++;
+            incVisited(cHeroX, cHeroY);
 			actionsTaken++;
 		}
 	}
 	
 	@Override
 	public int getMonsterIndex(int x, int y){
-		for(int i=0;i<getMonsterChars().size();i++){
-			if(getMonsterChars().get(i).isAlive() && getMonsterChars().get(i).getX()==x && getMonsterChars().get(i).getY()==y){
-				return i;
-			}
-		}
-		return -1;
+		if(!isSet(aliveMonsterBits,x,y)){ return -1; }
+		return monsterTable.getAliveIndex(getTileIndex(x,y), x, y);
 	}
 	
 	@Override
-	public boolean[][] getMonsterArray(){
-		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
-		for(int i=0;i<getMonsterChars().size();i++){
-			if(getMonsterChars().get(i).isAlive()){
-				result[(int)(getMonsterChars().get(i).getX())][(int)(getMonsterChars().get(i).getY())]=true;
-			}
-		}
-		return result;
-	}
-	
-	public boolean[][] getDeadMonsterArray(){
-		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
-		for(int i=0;i<getMonsterChars().size();i++){
-			if(!getMonsterChars().get(i).isAlive()){
-				result[(int)(getMonsterChars().get(i).getX())][(int)(getMonsterChars().get(i).getY())]=true;
-			}
-		}
-		return result;
-	}
+	public boolean[][] getMonsterArray(){ return monsterTable.toArray(true, mapSizeX, mapSizeY); }
+	public boolean[][] getDeadMonsterArray(){ return monsterTable.toArray(false, mapSizeX, mapSizeY); }
 	
 	@Override
 	public int getRewardIndex(int x, int y){
-		for(int i=0;i<getRewardChars().size();i++){
-			if(getRewardChars().get(i).isAlive() && getRewardChars().get(i).getX()==x && getRewardChars().get(i).getY()==y){
-				return i;
-			}
-		}
-		return -1;
+		if(!isSet(aliveRewardBits,x,y)){ return -1; }
+		return rewardTable.getAliveIndex(getTileIndex(x,y), x, y);
 	}
 	
 	@Override
-	public boolean[][] getRewardArray(){
-		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
-		for(int i=0;i<getRewardChars().size();i++){
-			if(getRewardChars().get(i).isAlive()){
-				result[(int)(getRewardChars().get(i).getX())][(int)(getRewardChars().get(i).getY())]=true;
-			}
-		}
-		return result;
-	}
-	
-	public boolean[][] getDeadRewardArray(){
-		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
-		for(int i=0;i<getRewardChars().size();i++){
-			if(!getRewardChars().get(i).isAlive()){
-				result[(int)(getRewardChars().get(i).getX())][(int)(getRewardChars().get(i).getY())]=true;
-			}
-		}
-		return result;
-	}
+	public boolean[][] getRewardArray(){ return rewardTable.toArray(true, mapSizeX, mapSizeY); }
+	public boolean[][] getDeadRewardArray(){ return rewardTable.toArray(false, mapSizeX, mapSizeY); }
 	
 	@Override
 	public int getPotionIndex(int x, int y){
-		for(int i=0;i<getPotionChars().size();i++){
-			if(getPotionChars().get(i).isAlive() && getPotionChars().get(i).getX()==x && getPotionChars().get(i).getY()==y){
-				return i;
-			}
-		}
-		return -1;
+		if(!isSet(alivePotionBits,x,y)){ return -1; }
+		return potionTable.getAliveIndex(getTileIndex(x,y), x, y);
 	}
 	
 	@Override
-	public boolean[][] getPotionArray(){
-		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
-		for(int i=0;i<getPotionChars().size();i++){
-			if(getPotionChars().get(i).isAlive()){
-				result[(int)(getPotionChars().get(i).getX())][(int)(getPotionChars().get(i).getY())]=true;
-			}
-		}
-		return result;
-	}
-	
-	public boolean[][] getDeadPotionArray(){
-		boolean[][] result = new boolean[impassable.length][impassable[0].length];
-		for(int x=0;x<impassable.length;x++){
-			for(int y=0;y<impassable[0].length;y++){
-				result[x][y]=false;
-			}
-		}
-		for(int i=0;i<getPotionChars().size();i++){
-			if(!getPotionChars().get(i).isAlive()){
-				result[(int)(getPotionChars().get(i).getX())][(int)(getPotionChars().get(i).getY())]=true;
-			}
-		}
-		return result;
-	}
+	public boolean[][] getPotionArray(){ return potionTable.toArray(true, mapSizeX, mapSizeY); }
+	public boolean[][] getDeadPotionArray(){ return potionTable.toArray(false, mapSizeX, mapSizeY); }
 	
 	protected void updateGameState(){
 		// game logic (monster movement, hp lost, etc.)
@@ -481,7 +469,9 @@ public class PlayMap extends Dungeon implements Cloneable {
 	
 	protected void updateViewport(){
 		clearCurrentView();
-		viewport = new int[2*viewRange+1][2*viewRange+1];
+		viewX = hero.getX();
+		viewY = hero.getY();
+		if(viewport==null){ viewport = new int[2*viewRange+1][2*viewRange+1]; }	// every cell is rewritten below
 		for(int x=-viewRange;x<=viewRange;x++){
 			for(int y=-viewRange;y<=viewRange;y++){
 				int glob_x = (int)(hero.getX()+x);
@@ -502,7 +492,11 @@ public class PlayMap extends Dungeon implements Cloneable {
 						}
 					}
 					// UPDATE EXPLORATION TABLE
-					explored[glob_x][glob_y]=true;
+					if(!explored[glob_x][glob_y]){
+						explored[glob_x][glob_y]=true;
+						setBit(exploredBits, getTileIndex(glob_x, glob_y));
+						exploredTiles++;
+					}
 					currentView[glob_x][glob_y]=true;
 				} else {
 					viewport[view_x][view_y]=NONE;
@@ -537,30 +531,36 @@ public class PlayMap extends Dungeon implements Cloneable {
 	}
 	
 	protected void clearCurrentView(){
-		currentView = new boolean[this.getMapSizeX()][this.getMapSizeY()];
-		for(int x=0;x<currentView.length;x++){
-			for(int y=0;y<currentView[x].length;y++){
+		if(currentView==null || viewX<0){
+			currentView = new boolean[this.getMapSizeX()][this.getMapSizeY()];
+			return;
+		}
+		// only the tiles around the previous viewport can be set
+		for(int x=Math.max(0,viewX-viewRange);x<=Math.min(mapSizeX-1,viewX+viewRange);x++){
+			for(int y=Math.max(0,viewY-viewRange);y<=Math.min(mapSizeY-1,viewY+viewRange);y++){
 				currentView[x][y]=false;
 			}
 		}
 	}
 	
 	protected void clearExplored(){
-		explored = new boolean[getMapSizeX()][getMapSizeY()];
-		for(int x=0;x<explored.length;x++){
-			for(int y=0;y<explored[x].length;y++){
-				explored[x][y]=false;
-			}
+		if(explored==null){
+			explored = new boolean[getMapSizeX()][getMapSizeY()];
+		} else {
+			for(int x=0;x<explored.length;x++){ Arrays.fill(explored[x], false); }
 		}
+		exploredBits = clearBits(exploredBits);
+		exploredTiles = 0;
 	}
 
     protected void clearVisited(){
-        visited = new int[getMapSizeX()][getMapSizeY()];
-        for(int x=0;x<visited.length;x++){
-            for(int y=0;y<visited[x].length;y++){
-                visited[x][y] = 0;
-            }
+        if(visited==null){
+            visited = new int[getMapSizeX()][getMapSizeY()];
+        } else {
+            for(int x=0;x<visited.length;x++){ Arrays.fill(visited[x], 0); }
         }
+        visitedBits = clearBits(visitedBits);
+        visitedTiles = 0;
     }
 	
 	
@@ -576,72 +576,160 @@ public class PlayMap extends Dungeon implements Cloneable {
 		if(hero!=null && hero.getPosition().x==x && hero.getPosition().y==y){ return true; }
 		return false;
 	}
-	public boolean isMonster(int x, int y){ 
-		if(getMonsterIndex(x,y)>=0){ return true; }
-		return false;
-	}
-	public boolean isReward(int x, int y){ 
-		if(getRewardIndex(x,y)>=0){ return true; }
-		return false;
-	}
-	public boolean isPotion(int x, int y){ 
-		if(getPotionIndex(x,y)>=0){ return true; }
-		return false;
-	}
+	public boolean isMonster(int x, int y){ return isSet(aliveMonsterBits,x,y); }
+	public boolean isReward(int x, int y){ return isSet(aliveRewardBits,x,y); }
+	public boolean isPotion(int x, int y){ return isSet(alivePotionBits,x,y); }
 	
 	protected void clearEventLog(){
-		eventLog = new Vector<String>();
+		events.clear();
 	}
 	public void logEvent(String event){ 
-		if(eventLog==null){ clearEventLog(); }
-		eventLog.add(event);
+		events.add(GameEvents.MESSAGE, -1, 0, actionsTaken, event);
+		notifyListeners(GameEvents.MESSAGE, -1, 0);
+	}
+	protected void logEvent(int code, int entity, int hpDelta){
+		events.add(code, entity, hpDelta, actionsTaken, null);
+		notifyListeners(code, entity, hpDelta);
+	}
+	protected void notifyListeners(int code, int entity, int hpDelta){
+		if(eventListeners==null){ return; }
+		for(int i=0;i<eventListeners.size();i++){ eventListeners.get(i).onGameEvent(this, code, entity, hpDelta, actionsTaken); }
 	}
 	public String getLastEvent(){ 
-		if(eventLog!=null && !eventLog.isEmpty()){ return eventLog.lastElement(); }
+		if(events.getCount()>0){ return events.format(this, 0); }
 		return "";
 	}
+	public GameEvents getEvents(){ return events; }
+	public void addEventListener(GameEventListener listener){ 
+		if(eventListeners==null){ eventListeners = new ArrayList<GameEventListener>(); }
+		eventListeners.add(listener);
+	}
+	public void removeEventListener(GameEventListener listener){ 
+		if(eventListeners!=null){ eventListeners.remove(listener); }
+	}
 
-    public Vector<Reward> getRewardChars() { return rewardChars; }
-    public void setRewardChars(Vector<Reward> rewardChars) { this.rewardChars = rewardChars; }
-    public Reward getRewardChar(int index) { return this.rewardChars.get(index); }
-    public Vector<Powerup> getPotionChars() { return potionChars; }
-    public void setPotionChars(Vector<Powerup> potionChars) { this.potionChars = potionChars; }
-    public Powerup getPotionChar(int index) { return this.potionChars.get(index); }
-    public Vector<Monster> getMonsterChars() { return monsterChars; }
-    public void setMonsterChars(Vector<Monster> monsterChars) { this.monsterChars = monsterChars; }
-	public Monster getMonsterChar(int index) { return this.monsterChars.get(index); }
-	
-	public void incVisited(int x, int y){ visited[x][y]++; }
-	public void setVisited(int x, int y, int value){ visited[x][y] = value; }
+	// ----------------------------------------------------------------
+	// CHARACTER views of the entity tables: read-only lists of read-only characters that read 
+	// the tables as the game goes on (see EntityViews). Changing a list or a character throws 
+	// UnsupportedOperationException; entities are replaced by setting new characters.
+	// ----------------------------------------------------------------
+	
+	public List<Reward> getRewardChars(){ 
+		if(rewardChars==null){ rewardChars = EntityViews.rewards(rewardTable); }
+		return rewardChars; 
+	}
+	public void setRewardChars(List<Reward> rewardChars){ 
+		int[] bonuses = new int[rewardChars.size()];
+		for(int i=0;i<bonuses.length;i++){ bonuses[i] = rewardChars.get(i).getTreasureBonus(); }
+		rewardTable = EntityTable.ofCharacters(rewardChars, bonuses, null, mapSizeX, mapSizeY);
+		updateEntityTiles();
+	}
+	public Reward getRewardChar(int index){ return getRewardChars().get(index); }
+	public List<Powerup> getPotionChars(){ 
+		if(potionChars==null){ potionChars = EntityViews.potions(potionTable); }
+		return potionChars; 
+	}
+	public void setPotionChars(List<Powerup> potionChars){ 
+		int[] healing = new int[potionChars.size()];
+		long[] overheal = null;	// flag bits of the overheal potions
+		for(int i=0;i<healing.length;i++){ 
+			healing[i] = potionChars.get(i).getHealing(); 
+			if(potionChars.get(i).isOverheal()){
+				if(overheal==null){ overheal = new long[(healing.length+63)>>>6]; }
+				overheal[i>>>6] |= 1L<<i;
+			}
+		}
+		potionTable = EntityTable.ofCharacters(potionChars, healing, overheal, mapSizeX, mapSizeY);
+		updateEntityTiles();
+	}
+	public Powerup getPotionChar(int index){ return getPotionChars().get(index); }
+	public List<Monster> getMonsterChars(){ 
+		if(monsterChars==null){ monsterChars = EntityViews.monsters(monsterTable); }
+		return monsterChars; 
+	}
+	public void setMonsterChars(List<Monster> monsterChars){ 
+		int[] damages = new int[monsterChars.size()];
+		for(int i=0;i<damages.length;i++){ damages[i] = monsterChars.get(i).getDamage(); }
+		monsterTable = EntityTable.ofCharacters(monsterChars, damages, null, mapSizeX, mapSizeY);
+		updateEntityTiles();
+	}
+	public Monster getMonsterChar(int index){ return getMonsterChars().get(index); }
+	
+	public void incVisited(int x, int y){ setVisited(x, y, visited[x][y]+1); }
+	public void setVisited(int x, int y, int value){ 
+		boolean wasVisited = visited[x][y]>0;
+		visited[x][y] = value; 
+		if(!wasVisited && value>0){
+			setBit(visitedBits, getTileIndex(x,y));
+			visitedTiles++;
+		} else if(wasVisited && value<=0){
+			clearBit(visitedBits, getTileIndex(x,y));
+			visitedTiles--;
+		}
+	}
+	
+	// ----------------------------------------------------------------
+	// BITSET views and counters (views are shared: callers must not modify them)
+	// ----------------------------------------------------------------
+	
+	@Override
+	public long[] getMonsterBits(){ return aliveMonsterBits; }
+	@Override
+	public long[] getRewardBits(){ return aliveRewardBits; }
+	@Override
+	public long[] getPotionBits(){ return alivePotionBits; }
+	public long[] getDeadMonsterBits(){ return deadMonsterBits; }
+	public long[] getDeadRewardBits(){ return deadRewardBits; }
+	public long[] getDeadPotionBits(){ return deadPotionBits; }
+	public long[] getVisitedBits(){ return visitedBits; }
+	public long[] getExploredBits(){ return exploredBits; }
+	
+	public int getAliveMonsterCount(){ return monsterTable.getAliveCount(); }
+	public int getDeadMonsterCount(){ return monsterTable.deadCount; }
+	public int getAliveRewardCount(){ return rewardTable.getAliveCount(); }
+	public int getDeadRewardCount(){ return rewardTable.deadCount; }
+	public int getAlivePotionCount(){ return potionTable.getAliveCount(); }
+	public int getDeadPotionCount(){ return potionTable.deadCount; }
+	public int getVisitedTileCount(){ return visitedTiles; }
+	public int getExploredTileCount(){ return exploredTiles; }
+	
+	public boolean isVisited(int x, int y){ return visitedBits!=null && isSet(visitedBits,x,y); }
+	
+	protected void kill(EntityTable table, int entity, long[] alive, long[] dead, int x, int y){
+		table.kill(entity);
+		int index = getTileIndex(x,y);
+		if(table.getAliveIndex(index, x, y)<0){ clearBit(alive, index); }
+		setBit(dead, index);
+	}
 	
 	public String toASCII(){ return toASCII(true); }
 	public String toASCII(boolean includeHP){
-		String result="";
+		StringBuilder result = new StringBuilder(mapSizeY*(mapSizeX+1)+8);
 		for(int y=0;y<mapSizeY;y++){
 			for(int x=0;x<mapSizeX;x++){
 				if(impassable[x][y]){ 
-					result+="#"; 
+					result.append('#'); 
 				} else if(isHero(x,y)){
-					result+="@"; 
+					result.append('@'); 
 				} else if(isEntrance(x,y)){
-					result+="E"; 
+					result.append('E'); 
 				} else if(isExit(x,y)){
-					result+="X"; 
+					result.append('X'); 
 				} else if(isMonster(x,y)){
-					result+="m"; 
+					result.append('m'); 
 				} else if(isReward(x,y)){
-					result+="r"; 
+					result.append('r'); 
 				} else if(isPotion(x,y)){
-					result+="p"; 
+					result.append('p'); 
 				} else {
-					result+=".";
+					result.append('.');
 				}				
 			}
-			result+="\n";
+			result.append('\n');
 		}
 		if(includeHP){
-			result+=hero.getHitpoints()+"\n";
+			result.append(hero.getHitpoints()).append('\n');
 		}
-		return result;
+		return result.toString();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+package dungeon.play;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import dungeon.Dungeon;
+import dungeon.DungeonLoader;
+
+/**
+ * Compact record of one playthrough (see PlaytraceRecorder): the seed and hash of the level it 
+ * was played on, the damage of every monster, 2 bits per move plus an idle bit per step and a 
+ * keyframe of the hero and of the alive entities every keyframeInterval steps. Any step can be restored from the 
+ * nearest keyframe by replaying at most keyframeInterval-1 actions.
+ */
+public class Playtrace {
+	static final int MAGIC = 0x50545243;	// "PTRC"
+	static final int VERSION = 2;	// 2 added the idle bits, version 1 traces are still read
+	// hp, x and y as shorts, actionsTaken as an int and the halted flag, then the alive bits 
+	// of the monsters, rewards and potions (in that order, by entity index)
+	static final int KEYFRAME_HEADER_SIZE = 11;
+	
+	final long seed;
+	final long levelHash;
+	final int keyframeInterval;
+	final int monsters, rewards, potions;
+	final byte[] damages;
+	final int steps;
+	final byte[] actions;	// 4 actions per byte, the first one in the lowest bits
+	final byte[] idles;	// 8 steps per byte, set for idle steps (their action bits are 0)
+	final byte[] keyframes;	// keyframe k holds the state after k*keyframeInterval steps
+	
+	Playtrace(long seed, long levelHash, int keyframeInterval, int monsters, int rewards, int potions, 
+			byte[] damages, int steps, byte[] actions, byte[] idles, byte[] keyframes){
+		this.seed = seed;
+		this.levelHash = levelHash;
+		this.keyframeInterval = keyframeInterval;
+		this.monsters = monsters;
+		this.rewards = rewards;
+		this.potions = potions;
+		this.damages = damages;
+		this.steps = steps;
+		this.actions = actions;
+		this.idles = idles;
+		this.keyframes = keyframes;
+	}
+	
+	public long getSeed(){ return seed; }
+	public long getLevelHash(){ return levelHash; }
+	public int getKeyframeInterval(){ return keyframeInterval; }
+	public int getStepCount(){ return steps; }
+	
+	/** @return direction (UP, RIGHT, DOWN or LEFT) taken at the given step, or IDLE */
+	public int getAction(int step){ 
+		if(step<0 || step>=steps){ throw new IndexOutOfBoundsException("Step "+step+" of "+steps); }
+		if((idles[step>>>3] & (1<<(step&7)))!=0){ return PlayMap.IDLE; }
+		return (actions[step>>>2]>>>((step&3)<<1)) & 3; 
+	}
+	
+	static int getKeyframeSize(int entities){ return KEYFRAME_HEADER_SIZE+(entities+7)/8; }
+	
+	/**
+	 * Restores the game after the given number of steps: hero hitpoints and position, taken 
+	 * actions, alive entities and whether the game is over are exactly as recorded. Visit and 
+	 * exploration counts only cover the steps replayed since the nearest keyframe.
+	 * @param level the level the trace was recorded on (or a PlayMap of it)
+	 * @param step in [0, getStepCount()]
+	 * @throws IllegalArgumentException if the level is not the recorded one
+	 */
+	public PlayMap seek(Dungeon level, int step){
+		if(step<0 || step>steps){ throw new IndexOutOfBoundsException("Step "+step+" of "+steps); }
+		if(level instanceof PlayMap){ level = ((PlayMap)level).baseMap; }
+		if(hashLevel(level)!=levelHash){ throw new IllegalArgumentException("The trace was recorded on another level"); }
+		PlayMap result = new PlayMap(level);
+		result.startGame();
+		int frame = step/keyframeInterval;
+		restoreKeyframe(result, frame);
+		for(int s=frame*keyframeInterval;s<step;s++){ result.updateGame(getAction(s)); }
+		return result;
+	}
+	
+	/** @return the game replayed from the start, with complete visit and exploration counts */
+	public PlayMap replay(Dungeon level){
+		PlayMap result = seek(level, 0);
+		for(int s=0;s<steps;s++){ result.updateGame(getAction(s)); }
+		return result;
+	}
+	
+	void restoreKeyframe(PlayMap map, int frame){
+		ByteBuffer keyframe = ByteBuffer.wrap(keyframes, frame*getKeyframeSize(monsters+rewards+potions), getKeyframeSize(monsters+rewards+potions));
+		int hitpoints = keyframe.getShort();
+		int x = keyframe.getShort();
+		int y = keyframe.getShort();
+		int actionsTaken = keyframe.getInt();
+		boolean halted = keyframe.get()!=0;
+		int bitsOffset = keyframe.position();
+		int[] monsterDamages = map.monsterTable.getWritableValues();
+		for(int i=0;i<monsters;i++){ monsterDamages[i] = damages[i]; }
+		map.monsterTable.revive();
+		map.rewardTable.revive();
+		map.potionTable.revive();
+		for(int i=0;i<monsters;i++){
+			if(!isSet(keyframes, bitsOffset, i)){ map.monsterTable.kill(i); }
+		}
+		for(int i=0;i<rewards;i++){
+			if(!isSet(keyframes, bitsOffset, monsters+i)){ map.rewardTable.kill(i); }
+		}
+		for(int i=0;i<potions;i++){
+			if(!isSet(keyframes, bitsOffset, monsters+rewards+i)){ map.potionTable.kill(i); }
+		}
+		// rebuild the alive/dead tile bits from the tables
+		map.updateEntityTiles();
+		map.hero.setHitpoints(hitpoints);
+		map.hero.setPosition(x, y);
+		map.actionsTaken = actionsTaken;
+		map.gameHalted = halted;
+		map.updateViewport();
+	}
+	
+	static boolean isSet(byte[] bytes, int offset, int bit){ return (bytes[offset+(bit>>>3)] & (1<<(bit&7)))!=0; }
+	
+	/** 64-bit FNV-1a hash of the ASCII form of a level, used to check traces against levels. */
+	public static long hashLevel(Dungeon level){
+		long hash = 0xcbf29ce484222325L;
+		for(byte b : DungeonLoader.toAsciiDungeon(level).getBytes(StandardCharsets.US_ASCII)){
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+	
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(seed);
+		out.writeLong(levelHash);
+		out.writeShort(keyframeInterval);
+		out.writeShort(monsters);
+		out.writeShort(rewards);
+		out.writeShort(potions);
+		out.write(damages);
+		out.writeInt(steps);
+		out.write(actions);
+		out.write(idles);
+		out.write(keyframes);
+	}
+	
+	/**
+	 * Reads a trace written by write; traces can be concatenated in one stream.
+	 * @throws IllegalArgumentException if the stream is not at a trace
+	 */
+	public static Playtrace read(DataInputStream in) throws IOException {
+		int version = (in.readInt()==MAGIC) ? in.readByte() : -1;
+		if(version<1 || version>VERSION){ throw new IllegalArgumentException("Not a playtrace"); }
+		long seed = in.readLong();
+		long levelHash = in.readLong();
+		int keyframeInterval = in.readUnsignedShort();
+		int monsters = in.readUnsignedShort();
+		int rewards = in.readUnsignedShort();
+		int potions = in.readUnsignedShort();
+		byte[] damages = new byte[monsters];
+		in.readFully(damages);
+		int steps = in.readInt();
+		byte[] actions = new byte[(steps+3)/4];
+		in.readFully(actions);
+		byte[] idles = new byte[(steps+7)/8];
+		if(version>=2){ in.readFully(idles); }
+		byte[] keyframes = new byte[(steps/keyframeInterval+1)*getKeyframeSize(monsters+rewards+potions)];
+		in.readFully(keyframes);
+		return new Playtrace(seed, levelHash, keyframeInterval, monsters, rewards, potions, damages, steps, actions, idles, keyframes);
+	}
+	
+	public byte[] toBytes(){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)){
+			write(out);
+		} catch(IOException e){
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
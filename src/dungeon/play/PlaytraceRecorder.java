@@ -0,0 +1,98 @@
+package dungeon.play;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Records a game as a Playtrace while it is played: actions go through step() instead of 
+ * PlayMap.updateGame(). Every action played before the game is over is a step, idle ones 
+ * included (they still count as taken actions and visits); actions after the game is over 
+ * change nothing and are not recorded.
+ */
+public class PlaytraceRecorder {
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+	
+	final PlayMap map;
+	final long seed;
+	final long levelHash;
+	final int keyframeInterval;
+	final byte[] damages;
+	final int monsters, rewards, potions;
+	final ByteArrayOutputStream keyframes = new ByteArrayOutputStream();
+	byte[] actions = new byte[64];
+	byte[] idles = new byte[32];
+	int steps = 0;
+	
+	public PlaytraceRecorder(PlayMap map, long seed){ this(map, seed, DEFAULT_KEYFRAME_INTERVAL); }
+	
+	/**
+	 * @param map a started game (see PlayMap.startGame)
+	 * @param seed the seed the game was started with, kept in the trace for reference
+	 */
+	public PlaytraceRecorder(PlayMap map, long seed, int keyframeInterval){
+		if(keyframeInterval<1 || keyframeInterval>0xffff){ throw new IllegalArgumentException("Keyframe interval must be in [1,65535]"); }
+		this.map = map;
+		this.seed = seed;
+		this.levelHash = Playtrace.hashLevel(map.baseMap);
+		this.keyframeInterval = keyframeInterval;
+		this.monsters = map.monsterTable.size();
+		this.rewards = map.rewardTable.size();
+		this.potions = map.potionTable.size();
+		this.damages = new byte[monsters];
+		for(int i=0;i<monsters;i++){ damages[i] = (byte)map.monsterTable.values[i]; }
+		writeKeyframe();
+	}
+	
+	public PlayMap getMap(){ return map; }
+	public int getStepCount(){ return steps; }
+	
+	/** Plays the action on the recorded game and records it unless the game is over. */
+	public void step(int action){
+		if(map.isGameHalted()){
+			map.updateGame(action);
+			return;
+		}
+		if((steps>>>2)==actions.length){ actions = Arrays.copyOf(actions, actions.length*2); }
+		if((steps>>>3)==idles.length){ idles = Arrays.copyOf(idles, idles.length*2); }
+		if(action<PlayMap.UP || action>PlayMap.LEFT){
+			// any other action leaves the hero in place, like IDLE
+			idles[steps>>>3] |= 1<<(steps&7);
+		} else {
+			actions[steps>>>2] |= action<<((steps&3)<<1);
+		}
+		map.updateGame(action);
+		steps++;
+		if(steps%keyframeInterval==0){ writeKeyframe(); }
+	}
+	
+	void writeKeyframe(){
+		byte[] keyframe = new byte[Playtrace.getKeyframeSize(monsters+rewards+potions)];
+		putShort(keyframe, 0, map.hero.getHitpoints());
+		putShort(keyframe, 2, map.hero.getX());
+		putShort(keyframe, 4, map.hero.getY());
+		int actionsTaken = map.getActionsTaken();
+		keyframe[6] = (byte)(actionsTaken>>>24);
+		keyframe[7] = (byte)(actionsTaken>>>16);
+		keyframe[8] = (byte)(actionsTaken>>>8);
+		keyframe[9] = (byte)actionsTaken;
+		keyframe[10] = (byte)(map.isGameHalted() ? 1 : 0);
+		int offset = Playtrace.KEYFRAME_HEADER_SIZE;
+		for(int i=0;i<monsters;i++){ if(map.monsterTable.isAlive(i)){ setBit(keyframe, offset, i); } }
+		for(int i=0;i<rewards;i++){ if(map.rewardTable.isAlive(i)){ setBit(keyframe, offset, monsters+i); } }
+		for(int i=0;i<potions;i++){ if(map.potionTable.isAlive(i)){ setBit(keyframe, offset, monsters+rewards+i); } }
+		keyframes.write(keyframe, 0, keyframe.length);
+	}
+	
+	static void putShort(byte[] bytes, int offset, int value){
+		bytes[offset] = (byte)(value>>>8);
+		bytes[offset+1] = (byte)value;
+	}
+	
+	static void setBit(byte[] bytes, int offset, int bit){ bytes[offset+(bit>>>3)] |= 1<<(bit&7); }
+	
+	/** @return the trace of the steps recorded so far */
+	public Playtrace finish(){
+		return new Playtrace(seed, levelHash, keyframeInterval, monsters, rewards, potions, damages.clone(), 
+			steps, Arrays.copyOf(actions, (steps+3)/4), Arrays.copyOf(idles, (steps+7)/8), keyframes.toByteArray());
+	}
+}
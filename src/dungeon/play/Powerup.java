@@ -33,32 +33,30 @@ public class Powerup extends Reward {
 	boolean isOverheal(){ return overheal; }
 	
 	@Override
-	public String eventCollision(GameCharacter collider){
-		if(collider instanceof Hero){ 
-			Hero hero = (Hero)collider;
-			this.kill();
-			hero.setPosition(new Point2D(position));
-			hero.addToScore(treasureBonus);
-			int healedAmount;
-			if(overheal){
-				healedAmount = healing;
-			} else {
-				if(hero.getHitpoints()>=hero.getStartingHitpoints()){
-					healedAmount = 0;
-				} else {
-					healedAmount = Math.min(healing,hero.getStartingHitpoints()-hero.getHitpoints());
-				}
-			}
-			hero.damage(-healedAmount);
-			if(healedAmount>0){
-				return "Hero acquires "+this.getName()+" and gains "+healedAmount+" HP.";
-			} else if(healedAmount<0){
-				return "Hero acquires "+this.getName()+" but loses "+healedAmount+" HP.";
-			} else {
-				return "Hero acquires "+this.getName()+", but is at full health.";
-			}
+	public int collide(Hero hero){
+		this.kill();
+		hero.setPosition(position);
+		hero.addToScore(treasureBonus);
+		int healedAmount = getHealedAmount(hero, healing, overheal);
+		hero.damage(-healedAmount);
+		return healedAmount;
+	}
+	
+	static int getHealedAmount(Hero hero, int healing, boolean overheal){
+		if(overheal){ return healing; }
+		if(hero.getHitpoints()>=hero.getStartingHitpoints()){ return 0; }
+		return Math.min(healing,hero.getStartingHitpoints()-hero.getHitpoints());
+	}
+	
+	@Override
+	public String describeCollision(int healedAmount){
+		if(healedAmount>0){
+			return "Hero acquires "+this.getName()+" and gains "+healedAmount+" HP.";
+		} else if(healedAmount<0){
+			return "Hero acquires "+this.getName()+" but loses "+healedAmount+" HP.";
+		} else {
+			return "Hero acquires "+this.getName()+", but is at full health.";
 		}
-		return "";
 	}
 /*=======
 package dungeon.sketchplay;
@@ -31,12 +31,23 @@ public class Reward extends GameCharacter {
 	@Override
 	public String eventCollision(GameCharacter collider){
 		if(collider instanceof Hero){ 
-			Hero hero = (Hero)collider;
-			this.kill();
-			hero.setPosition(new Point2D(position));
-			hero.addToScore(treasureBonus);
-			return "Hero acquires "+this.getName()+".";
+			return describeCollision(collide((Hero)collider));
 		}
 		return "";
 	}
+	
+	/**
+	 * The hero picks the reward up.
+	 * @return the HP change of the hero
+	 */
+	public int collide(Hero hero){
+		this.kill();
+		hero.setPosition(position);
+		hero.addToScore(treasureBonus);
+		return 0;
+	}
+	
+	public String describeCollision(int hpDelta){
+		return "Hero acquires "+this.getName()+".";
+	}
 }
\ No newline at end of file
@@ -45,12 +45,11 @@ public class PlayVisualizer {
 	}
 	
 	public static String renderHeatmapDungeon(PlayMap map){
-		boolean[][] visited = map.getAnyVisited();
 		String output = "";
 		for(int y=0;y<map.getMapSizeY();y++){
 			for(int x=0;x<map.getMapSizeX();x++){
 				// walls or floor
-				if(visited[x][y]){ 
+				if(map.isVisited(x, y)){ 
 					output+="%"; 
 				} else if(!map.isPassable(x, y)){ 
 					output+="#"; 
@@ -1,7 +1,6 @@
 package experiment;
 
-import java.util.Scanner;
-import java.io.File;
+import java.nio.file.Paths;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.IOException;
@@ -10,17 +9,20 @@ import controllers.*;
 
 import dungeon.Dungeon;
 import dungeon.DungeonLoader;
-import dungeon.play.GameCharacter;
 import dungeon.play.PlayMap;
 
 import dungeon.visualization.PlayVisualizer;
 
 import util.math2d.Matrix2D;
+import util.metrics.LatencyHistogram;
+import util.statics.RandomNumberManager;
 import util.statics.StatisticUtils;
 
 public class CompetitionMode {
-	final int totalRuns = 10;
-	final int maxActions = 300;
+	int totalRuns = 10;
+	int maxActions = 300;
+	long seed;
+	boolean seeded = false;	// unseeded runs draw monster damage and random moves from an unseeded generator
 	
 	String outputFolder = "./testResults/";	// this folder needs to already exist, it will not be created by the program
 	
@@ -32,12 +34,16 @@ public class CompetitionMode {
 		"controllers.MCTSController",
 	};
 
+	ControllerRegistry registry = ControllerRegistry.getDefault();
+	Controller[] controllerPool;	// one controller per entry, rebound to a new game every run
+	
 	double[][] hpRemaining;
 	double[][] monstersKilled;
 	double[][] treasuresCollected;
 	double[][] potionsDrunk;
 	double[][] actionsTaken;
 	double[][] tilesExplored;
+	LatencyHistogram[] decisionTime;	// nanoseconds per getNextAction(), over all runs on the map
 	
 	public void runCompetition(String filename){
 		if(controllerNames==null || controllerNames.length==0){ 
@@ -49,35 +55,24 @@ public class CompetitionMode {
 		
 		initMetrics(controllerNames.length);
 		
-		String asciiMap = "";
+		Dungeon testDungeon;
 		try { 
-			asciiMap = new Scanner(new File(filename)).useDelimiter("\\A").next(); 
+			testDungeon = DungeonLoader.loadAsciiDungeon(Paths.get(filename)); 
 		} catch(Exception e){
 			System.out.println(e.toString());
+			return;
 		}
-		Dungeon testDungeon = DungeonLoader.loadAsciiDungeon(asciiMap);
 		PlayMap testPlay = new PlayMap(testDungeon);
+		if(controllerPool==null || controllerPool.length!=controllerNames.length){ 
+			controllerPool = new Controller[controllerNames.length]; 
+		}
 		for(int r=0;r<totalRuns;r++){
-			testPlay.startGame();	// randomizes monster damage
-			
-			PlayMap[] testInstances = new PlayMap[controllerNames.length];
-			Controller[] testAgents = new Controller[controllerNames.length];
-			for(int c=0;c<controllerNames.length;c++){
-				testInstances[c] = testPlay.clone();
-				try { 
-					testAgents[c] = (Controller)(Class.forName(controllerNames[c]).getConstructor(PlayMap.class, GameCharacter.class).newInstance(testInstances[c],testInstances[c].getHero()));
-				} catch (Exception e){ 
-					System.out.println(e.toString()); 
-				}
-			}
+			long runSeed = runSeed(seed, mapFile, r);
+			if(seeded){ RandomNumberManager.setSeed(runSeed); }
+			testPlay.restartGame();	// randomizes monster damage
 			
 			for(int c=0;c<controllerNames.length;c++){
-				int actions = 0;
-				while(!testInstances[c].isGameHalted() && actions<maxActions){
-					testInstances[c].updateGame(testAgents[c].getNextAction());
-					actions++;
-				}
-				updateMetrics(c, r, testInstances[c], actions);
+				playRun(testPlay, runSeed, r, c);
 			}
 		}
 		System.out.println(printFullCompetitionMetrics(maxActions));
@@ -89,6 +84,42 @@ public class CompetitionMode {
 		}
 	}
 	
+	/**
+	 * Plays controller c on a copy of the started game and records it as run r. When seeded, 
+	 * the controller starts from a seed of its own, so the outcome does not depend on which 
+	 * runs were played before (see ShardedExperimentMode).
+	 */
+	protected void playRun(PlayMap testPlay, long runSeed, int r, int c){
+		PlayMap testInstance = testPlay.clone();
+		if(seeded){ RandomNumberManager.setSeed(RandomNumberManager.mixSeed(runSeed, c)); }
+		Controller testAgent = controllerPool[c];
+		if(testAgent!=null){
+			testAgent.rebind(testInstance,testInstance.getHero());
+		} else {
+			try { 
+				testAgent = registry.create(controllerNames[c],testInstance,testInstance.getHero());
+				controllerPool[c] = testAgent;
+			} catch (Exception e){ 
+				System.out.println(e.toString()); 
+			}
+		}
+		
+		int actions = 0;
+		while(!testInstance.isGameHalted() && actions<maxActions){
+			long start = System.nanoTime();
+			int action = testAgent.getNextAction();
+			decisionTime[c].record(System.nanoTime()-start);
+			testInstance.updateGame(action);
+			actions++;
+		}
+		updateMetrics(c, r, testInstance, actions);
+	}
+	
+	/** Seed of the monster damage of run r on a map; the same for every controller. */
+	static long runSeed(long seed, String mapFile, int r){
+		return RandomNumberManager.mixSeed(RandomNumberManager.mixSeed(seed, mapFile.hashCode()), r);
+	}
+	
 	protected void initMetrics(int controllers){
 		initMetrics(totalRuns, controllers);
 	}
@@ -100,15 +131,17 @@ public class CompetitionMode {
 		potionsDrunk = new double[controllers][runs];
 		actionsTaken = new double[controllers][runs];
 		tilesExplored = new double[controllers][runs];
+		decisionTime = new LatencyHistogram[controllers];
+		for(int c=0;c<controllers;c++){ decisionTime[c] = new LatencyHistogram(); }
 	}
 	
 	protected void updateMetrics(int controllerIndex, int runIndex, PlayMap finishedMap, int actions){
 		hpRemaining[controllerIndex][runIndex] = finishedMap.getHero().getHitpoints();
-		monstersKilled[controllerIndex][runIndex] = Matrix2D.count(finishedMap.getDeadMonsterArray());
-		treasuresCollected[controllerIndex][runIndex] = Matrix2D.count(finishedMap.getDeadRewardArray());
-		potionsDrunk[controllerIndex][runIndex] = Matrix2D.count(finishedMap.getDeadPotionArray());
+		monstersKilled[controllerIndex][runIndex] = finishedMap.getDeadMonsterCount();
+		treasuresCollected[controllerIndex][runIndex] = finishedMap.getDeadRewardCount();
+		potionsDrunk[controllerIndex][runIndex] = finishedMap.getDeadPotionCount();
 		actionsTaken[controllerIndex][runIndex] = actions;
-		tilesExplored[controllerIndex][runIndex] = Matrix2D.count(finishedMap.getAnyVisited());
+		tilesExplored[controllerIndex][runIndex] = finishedMap.getVisitedTileCount();
 	}
 	
 	protected String printFullCompetitionMetrics(int maxActions){
@@ -146,6 +179,23 @@ public class CompetitionMode {
 		for(int c=0;c<controllerNames.length;c++){
 			result+="\n"+controllerNames[c]+";"+timesUncompleted[c];
 		}
+		result += "\n" + "---------------------------------------";
+		result += "\n" + printDecisionTime();
+		return result;
+	}
+	
+	protected String printDecisionTime(){
+		String result = "decisionNs;p50;p90;p99;max";
+		int fastest = 0;
+		int slowest = 0;
+		for(int c=0;c<controllerNames.length;c++){
+			LatencyHistogram time = decisionTime[c];
+			result+="\n"+controllerNames[c]+";"+time.getPercentile(50)+";"+time.getPercentile(90)+";"+time.getPercentile(99)+";"+time.getMax();
+			if(time.getPercentile(50)<decisionTime[fastest].getPercentile(50)){ fastest = c; }
+			if(time.getPercentile(50)>decisionTime[slowest].getPercentile(50)){ slowest = c; }
+		}
+		result+="\nFASTEST;"+controllerNames[fastest]+";"+decisionTime[fastest].getPercentile(50);
+		result+="\nSLOWEST;"+controllerNames[slowest]+";"+decisionTime[slowest].getPercentile(50);
 		return result;
 	}
 	
@@ -193,7 +243,20 @@ public class CompetitionMode {
 	}
 	
 	public void setOutputFolder(String outputFolder){ this.outputFolder = outputFolder; }
-	public void setClassNames(String[] classNames){ this.controllerNames = classNames; }
+	public void setRuns(int totalRuns){ this.totalRuns = totalRuns; }
+	public void setMaxActions(int maxActions){ this.maxActions = maxActions; }
+	public void setSeed(long seed){ 
+		this.seed = seed; 
+		this.seeded = true;
+	}
+	public void setClassNames(String[] classNames){ 
+		this.controllerNames = classNames; 
+		this.controllerPool = null;
+	}
+	public void setRegistry(ControllerRegistry registry){ 
+		this.registry = registry; 
+		this.controllerPool = null;
+	}
 	
 	public static void writeFile(String filename, String line) throws IOException{
 		BufferedWriter outputWriter = null;
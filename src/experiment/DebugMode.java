@@ -4,9 +4,9 @@ import controllers.MCTSController;
 import dungeon.Dungeon;
 import dungeon.DungeonLoader;
 import dungeon.play.PlayMap;
+import util.metrics.LatencyHistogram;
 
-import java.util.Scanner;
-import java.io.File;
+import java.nio.file.Paths;
 
 public class DebugMode {
     final int maxActions = 300;
@@ -15,27 +15,33 @@ public class DebugMode {
         String[] temp = filename.split("/");
         String mapFile = temp[temp.length-1];
 
-        String asciiMap = "";
+        Dungeon testDungeon;
         try {
-            asciiMap = new Scanner(new File(filename)).useDelimiter("\\A").next();
+            testDungeon = DungeonLoader.loadAsciiDungeon(Paths.get(filename));
         } catch(Exception e){
             System.out.println(e.toString());
+            return;
         }
-        Dungeon testDungeon = DungeonLoader.loadAsciiDungeon(asciiMap);
         PlayMap testPlay = new PlayMap(testDungeon);
         testPlay.startGame();
 
         MCTSController testAgent = new MCTSController(testPlay, testPlay.getHero(), 1000);
 
         int actions = 0;
+        LatencyHistogram decisionTime = new LatencyHistogram();
 
         System.out.println(testPlay.toASCII(true));
         while(!testPlay.isGameHalted() && actions < maxActions){
-            testPlay.updateGame(testAgent.getNextAction());
+            long start = System.nanoTime();
+            int action = testAgent.getNextAction();
+            long elapsed = System.nanoTime()-start;
+            decisionTime.record(elapsed);
+            testPlay.updateGame(action);
             actions++;
-            System.out.println("----- ACTION " + actions + " -----");
+            System.out.println("----- ACTION " + actions + " (" + elapsed + " ns) -----");
             System.out.println(testPlay.toASCII(true));
         }
+        System.out.println("decisionNs p50/p90/p99/max: "+decisionTime.getPercentile(50)+" "+decisionTime.getPercentile(90)+" "+decisionTime.getPercentile(99)+" "+decisionTime.getMax());
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,237 @@
+package experiment;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controllers.Controller;
+import controllers.ControllerRegistry;
+
+import dungeon.Dungeon;
+import dungeon.DungeonLoader;
+import dungeon.play.PlayMap;
+
+import util.metrics.LatencyHistogram;
+
+/**
+ * Long-lived local server that evaluates ASCII levels with procedural personas, so that a 
+ * level editor or generator can get critic feedback from a warm JVM instead of starting 
+ * SimulationMode for every level. It only listens on the loopback interface. 
+ * 
+ * A job is a line "EVALUATE <runs> <maxActions> <controller> [<controller> ...]" followed by 
+ * the rows of the level and a line "END". Controllers are ControllerRegistry names; names 
+ * without a package are looked up in controllers. Every finished run is streamed back as
+ * "RUN;controller;run;hpRemaining;monstersKilled;treasuresCollected;potionsDrunk;actionsTaken;tilesExplored;decisionNsP50"
+ * in completion order, and the job ends with "DONE;elapsedMs" or "ERROR;message". 
+ * "PING" answers "PONG" and "QUIT" closes the connection.
+ */
+public class EvaluationServer {
+	public static final int DEFAULT_PORT = 4711;
+	static final int maxRuns = 1000;
+	static final int maxActionsLimit = 100000;
+	
+	final ControllerRegistry registry;
+	final ExecutorService connections;
+	final ExecutorService simulations;
+	ServerSocket serverSocket;
+	Thread acceptThread;
+	
+	public EvaluationServer(){
+		this(ControllerRegistry.getDefault(), Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Connections get a thread each and mostly block on the socket; simulations are CPU-bound 
+	 * and run on a pool of simulationThreads threads shared by all connections. 
+	 * (On Java 21+ the connection executor can be Executors.newVirtualThreadPerTaskExecutor().)
+	 */
+	public EvaluationServer(ControllerRegistry registry, int simulationThreads){
+		this.registry = registry;
+		this.connections = Executors.newCachedThreadPool(daemonThreads("evaluation-connection"));
+		this.simulations = Executors.newFixedThreadPool(simulationThreads, daemonThreads("evaluation-worker"));
+	}
+	
+	static ThreadFactory daemonThreads(String prefix){
+		AtomicInteger counter = new AtomicInteger();
+		return task -> {
+			Thread thread = new Thread(task, prefix+"-"+counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+	
+	/** Binds to the loopback interface; port 0 picks a free port (see getPort). */
+	public void start(int port) throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		acceptThread = new Thread(this::acceptConnections, "evaluation-accept");
+		acceptThread.start();
+	}
+	
+	public int getPort(){ return serverSocket.getLocalPort(); }
+	
+	public void stop(){
+		try { 
+			serverSocket.close(); 
+		} catch(IOException e){
+			System.out.println(e.toString());
+		}
+		connections.shutdownNow();
+		simulations.shutdownNow();
+	}
+	
+	void acceptConnections(){
+		while(!serverSocket.isClosed()){
+			try {
+				Socket socket = serverSocket.accept();
+				connections.execute(() -> serve(socket));
+			} catch(SocketException e){
+				// server socket closed by stop()
+			} catch(IOException e){
+				System.out.println(e.toString());
+			}
+		}
+	}
+	
+	void serve(Socket socket){
+		try(Socket s = socket;
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+			Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))){
+			String line;
+			while((line = in.readLine())!=null){
+				line = line.trim();
+				if(line.isEmpty()){ continue; }
+				if(line.equals("QUIT")){ break; }
+				if(line.equals("PING")){
+					out.write("PONG\n");
+				} else if(line.startsWith("EVALUATE")){
+					String level = readLevel(in);
+					try {
+						long start = System.nanoTime();
+						evaluate(line, level, out);
+						out.write("DONE;"+(System.nanoTime()-start)/1000000+"\n");
+					} catch(IllegalArgumentException e){
+						out.write("ERROR;"+e.getMessage()+"\n");
+					}
+				} else {
+					out.write("ERROR;unknown command "+line+"\n");
+				}
+				out.flush();
+			}
+		} catch(IOException e){
+			// client went away; its unfinished runs were cancelled in evaluate
+		}
+	}
+	
+	static String readLevel(BufferedReader in) throws IOException {
+		StringBuilder level = new StringBuilder();
+		String line;
+		while((line = in.readLine())!=null && !line.trim().equals("END")){
+			level.append(line).append('\n');
+		}
+		return level.toString();
+	}
+	
+	/**
+	 * Runs every controller of the job on the level, streaming each run as soon as it finishes. 
+	 * All controllers of one run play the same monster damage, as in CompetitionMode.
+	 * @throws IllegalArgumentException if the job line, the level or a controller is invalid
+	 */
+	void evaluate(String job, String level, Writer out) throws IOException {
+		String[] parts = job.split("\\s+");
+		if(parts.length<4){ throw new IllegalArgumentException("expected EVALUATE <runs> <maxActions> <controller> ..."); }
+		int runs = parseBounded(parts[1], "runs", maxRuns);
+		int maxActions = parseBounded(parts[2], "maxActions", maxActionsLimit);
+		String[] controllerNames = new String[parts.length-3];
+		for(int c=0;c<controllerNames.length;c++){
+			controllerNames[c] = parts[c+3].indexOf('.')<0 ? "controllers."+parts[c+3] : parts[c+3];
+			registry.getFactory(controllerNames[c]);
+		}
+		Dungeon dungeon = DungeonLoader.loadAsciiDungeon(ByteBuffer.wrap(level.getBytes(StandardCharsets.US_ASCII)));
+		
+		PlayMap testPlay = new PlayMap(dungeon);
+		CompletionService<String> results = new ExecutorCompletionService<String>(simulations);
+		List<Future<String>> pending = new ArrayList<Future<String>>();
+		for(int r=0;r<runs;r++){
+			testPlay.startGame();	// randomizes monster damage
+			for(int c=0;c<controllerNames.length;c++){
+				PlayMap instance = testPlay.clone();
+				String name = controllerNames[c];
+				int run = r;
+				pending.add(results.submit(() -> simulate(name, run, instance, maxActions)));
+			}
+		}
+		try {
+			for(int i=0;i<pending.size();i++){
+				out.write(results.take().get());
+				out.write('\n');
+				out.flush();
+			}
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch(ExecutionException e){
+			throw new IllegalArgumentException(e.getCause().toString(), e);
+		} finally {
+			for(Future<String> future : pending){ future.cancel(true); }
+		}
+	}
+	
+	String simulate(String controllerName, int run, PlayMap instance, int maxActions){
+		Controller agent = registry.create(controllerName, instance, instance.getHero());
+		LatencyHistogram decisionTime = new LatencyHistogram();
+		int actions = 0;
+		while(!instance.isGameHalted() && actions<maxActions){
+			if(Thread.currentThread().isInterrupted()){ return ""; }
+			long start = System.nanoTime();
+			int action = agent.getNextAction();
+			decisionTime.record(System.nanoTime()-start);
+			instance.updateGame(action);
+			actions++;
+		}
+		return "RUN;"+controllerName+";"+run+";"
+			+instance.getHero().getHitpoints()+";"
+			+instance.getDeadMonsterCount()+";"
+			+instance.getDeadRewardCount()+";"
+			+instance.getDeadPotionCount()+";"
+			+actions+";"
+			+instance.getVisitedTileCount()+";"
+			+decisionTime.getPercentile(50);
+	}
+	
+	static int parseBounded(String value, String name, int max){
+		int result;
+		try {
+			result = Integer.parseInt(value);
+		} catch(NumberFormatException e){
+			throw new IllegalArgumentException(name+" is not a number: "+value);
+		}
+		if(result<1 || result>max){ throw new IllegalArgumentException(name+" must be between 1 and "+max); }
+		return result;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		int port = args.length>0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		EvaluationServer server = new EvaluationServer();
+		server.start(port);
+		System.out.println("Evaluation server listening on "+server.serverSocket.getLocalSocketAddress());
+	}
+}
@@ -1,10 +1,15 @@
 package experiment;
 
-import java.util.Scanner;
-import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import controllers.*;
 
@@ -40,6 +45,32 @@ public class Q_SimulationMode {
      */
     final boolean train = false;
 
+    /**
+     * Cada checkpointRuns episodios se guarda un checkpoint en models/mapN.checkpoint (en segundo plano). Si al
+     * entrenar ya existe uno, el entrenamiento se reanuda desde él; se borra al guardar el modelo final.
+     */
+    final int checkpointRuns = 1000;
+    ExecutorService checkpointWriter = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    Future<?> pendingCheckpoint;
+
+    /**
+     * Experience replay al entrenar: se guardan las últimas replayCapacity transiciones y en cada paso se repiten
+     * replayBatch al azar (replayCapacity = 0 lo desactiva). Ver QLearningController.setExperienceReplay.
+     */
+    final int replayCapacity = 100000;
+    final int replayBatch = 8;
+
+    /**
+     * Si es true se entrena con estados canónicos bajo rotaciones y reflexiones de la ventana (ver
+     * QLearningController.setSymmetricStates). En los mapas del proyecto casi no hay situaciones repetidas rotadas,
+     * así que por defecto se mantienen las keys originales, compatibles con los modelos ya guardados.
+     */
+    final boolean symmetricStates = false;
+
 
     String outputFolder = "./testResults/";	// this folder needs to already exist, it will not be created by the program
     String modelsFolder = "./models/";
@@ -55,15 +86,13 @@ public class Q_SimulationMode {
         String[] temp = filename.split("/");
         String mapFile = temp[temp.length-1];
 
-        initMetrics();
-
-        String asciiMap = "";
+        Dungeon testDungeon;
         try {
-            asciiMap = new Scanner(new File(filename)).useDelimiter("\\A").next();
+            testDungeon = DungeonLoader.loadAsciiDungeon(Paths.get(filename));
         } catch(Exception e){
             System.out.println(e.toString());
+            return;
         }
-        Dungeon testDungeon = DungeonLoader.loadAsciiDungeon(asciiMap);
         PlayMap testPlay = new PlayMap(testDungeon);
         testPlay.startGame();
 
@@ -75,31 +104,30 @@ public class Q_SimulationMode {
             QLearningController testAgent = new QLearningController(testPlay,testPlay.getHero(), true,
                     "");
             System.out.println("-----------TRAINING-----------");
+            testAgent.setExperienceReplay(replayCapacity, replayBatch);
+            testAgent.setSymmetricStates(symmetricStates);
+            Path checkpointFile = Paths.get(modelsFolder + "map" + map_number + ".checkpoint");
+            int firstRun = resumeTraining(testAgent, checkpointFile);
             // Training
-            for(int i=0;i<trainingRuns;i++){
-
-                // Reiniciamos El juego
-                testPlay.startGame();
-
-                int actions = 0;
+            for(int i=firstRun;i<trainingRuns;i++){
 
                 // Actualizamos el progreso cada 10 runs
                 if (i%100 == 0){
                     System.out.println("Progreso: " + (double) i / (double) trainingRuns * 100.0 + "%") ;
                 }
-                while(!testPlay.isGameHalted() && actions<maxActions){
-                    testPlay.updateGame(testAgent.getNextAction());
-                    actions++;
-                }
+                playTrainingEpisode(testPlay, testAgent, i, trainingRuns);
 
-                // Cuando se ejecutaron un cuarto de los entrenamientos (aleatorios), el epsilon empieza a bajar,
-                // esto se ocasiona cuando se completaron el 25% de las Run de entrenamiento.
-                if(i >= trainingRuns * 0.25){
-                   testAgent.updateEpsilon(0.99);
+                if ((i + 1) % checkpointRuns == 0) {
+                    saveCheckpoint(testAgent.checkpoint(i + 1), checkpointFile);
                 }
-
             }
+            awaitCheckpoint();
             testAgent.saveTable(modelsFolder + "map" + map_number + ".txt");
+            try {
+                Files.deleteIfExists(checkpointFile);
+            } catch (IOException e) {
+                System.out.println(e.toString());
+            }
             System.out.println("-----------END TRAINING-----------");
             System.out.println("----------------------------------");
         }
@@ -107,16 +135,48 @@ public class Q_SimulationMode {
         /**
          * --------------------------------- FASE DE TESTEO ----------------------------------------
          */
+        runTests(testPlay, modelsFolder + "map" + map_number + ".txt", mapFile);
+    }
+
+    /**
+     * Juega un episodio de entrenamiento desde el inicio del nivel.
+     *
+     * @param episode       número del episodio
+     * @param totalEpisodes episodios del entrenamiento completo
+     */
+    protected void playTrainingEpisode(PlayMap testPlay, QLearningController testAgent, int episode, int totalEpisodes) {
+        // Reiniciamos El juego
+        testPlay.restartGame();
+
+        int actions = 0;
+        while(!testPlay.isGameHalted() && actions<maxActions){
+            testPlay.updateGame(testAgent.getNextAction());
+            actions++;
+        }
+
+        // Cuando se ejecutaron un cuarto de los entrenamientos (aleatorios), el epsilon empieza a bajar,
+        // esto se ocasiona cuando se completaron el 25% de las Run de entrenamiento.
+        if(episode >= totalEpisodes * 0.25){
+           testAgent.updateEpsilon(0.99);
+        }
+    }
+
+    /**
+     * Testea un modelo guardado en testRuns partidas (epsilon = 0, sin modificar la Q_table) y escribe el reporte de
+     * mapFile en outputFolder.
+     */
+    protected void runTests(PlayMap testPlay, String modelFile, String mapFile) {
+        initMetrics();
 
         System.out.println("--------------TESTING-------------");
 
         QLearningController testAgent = new QLearningController(testPlay,testPlay.getHero(), false
-                ,modelsFolder + "map" + map_number + ".txt");
+                ,modelFile);
 
         for(int i = 0; i< testRuns; i++){
 
 
-            testPlay.startGame();
+            testPlay.restartGame();
 
             int actions = 0;
 
@@ -146,6 +206,56 @@ public class Q_SimulationMode {
         System.out.println("-----------END TESTING-----------");
     }
 
+    /**
+     * Si existe un checkpoint, lo carga en el agente.
+     *
+     * @return primer episodio a ejecutar (0 si no había checkpoint o no se pudo leer)
+     */
+    protected int resumeTraining(QLearningController agent, Path checkpointFile) {
+        if (!Files.exists(checkpointFile)) {
+            return 0;
+        }
+        try {
+            QLearningCheckpoint checkpoint = QLearningCheckpoint.read(checkpointFile);
+            agent.restore(checkpoint);
+            System.out.println("Reanudando desde el episodio " + checkpoint.getEpisode() + " (" + checkpoint.getTableSize() + " estados)");
+            return checkpoint.getEpisode();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("No se pudo leer el checkpoint, se entrena desde cero: " + e.toString());
+            return 0;
+        }
+    }
+
+    /**
+     * Escribe el checkpoint en segundo plano. Si el anterior todavía se está escribiendo, este se salta en vez de
+     * detener el entrenamiento.
+     */
+    protected void saveCheckpoint(QLearningCheckpoint checkpoint, Path checkpointFile) {
+        if (pendingCheckpoint != null && !pendingCheckpoint.isDone()) {
+            return;
+        }
+        pendingCheckpoint = checkpointWriter.submit(() -> {
+            try {
+                checkpoint.write(checkpointFile);
+            } catch (IOException e) {
+                System.out.println("Error al escribir el checkpoint: " + e.toString());
+            }
+        });
+    }
+
+    protected void awaitCheckpoint() {
+        if (pendingCheckpoint == null) {
+            return;
+        }
+        try {
+            pendingCheckpoint.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println(e.toString());
+        }
+    }
+
     protected void initMetrics(){
         initMetrics(testRuns);
     }
@@ -161,14 +271,14 @@ public class Q_SimulationMode {
 
     protected void updateMetrics(int index, PlayMap finishedMap, int actions){
         hpRemaining[index] = finishedMap.getHero().getHitpoints();
-        monstersKilled[index] = Matrix2D.count(finishedMap.getDeadMonsterArray());
-        treasuresCollected[index] = Matrix2D.count(finishedMap.getDeadRewardArray());
-        potionsDrunk[index] = Matrix2D.count(finishedMap.getDeadPotionArray());
+        monstersKilled[index] = finishedMap.getDeadMonsterCount();
+        treasuresCollected[index] = finishedMap.getDeadRewardCount();
+        potionsDrunk[index] = finishedMap.getDeadPotionCount();
         actionsTaken[index] = actions;
         //if(hpRemaining[index]==0){ actionsTaken[index]=Double.NaN; }
         //tilesExplored[index] = Matrix2D.count(finishedMap.getExplored());
         // assuming you now have a int[][] visited array, the above can be converted to:
-        tilesExplored[index] = Matrix2D.count(finishedMap.getAnyVisited());
+        tilesExplored[index] = finishedMap.getVisitedTileCount();
     }
 
     protected String printMetrics(int maxActions){
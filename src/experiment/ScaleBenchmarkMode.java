@@ -0,0 +1,160 @@
+package experiment;
+
+import controllers.Controller;
+import controllers.PathfindingController;
+import controllers.RandomController;
+import controllers.RoombaController;
+import controllers.ZombieController;
+import dungeon.Dungeon;
+import dungeon.DungeonArchive;
+import dungeon.DungeonGenerator;
+import dungeon.DungeonLoader;
+import dungeon.play.PlayMap;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Stress test for large dungeons: generates a connected dungeon with the densities of the 
+ * 12x12 maps (thousands of monsters and treasures at 256x256 and up), round-trips it through 
+ * the ASCII loader and times play, cloning and pathfinding on it.
+ */
+public class ScaleBenchmarkMode {
+    final int totalActions = 20000;
+    final int totalClones = 20;
+    final String[] controllers = { "RandomController", "ZombieController", "RoombaController", "PathfindingController" };
+    String outputFolder = "./testResults/";
+
+    public String runBenchmark(int sizeX, int sizeY, long seed) {
+        StringBuilder report = new StringBuilder();
+        report.append("map;").append(sizeX).append("x").append(sizeY).append("\n");
+
+        long start = System.nanoTime();
+        Dungeon testDungeon = DungeonGenerator.forSize(sizeX, sizeY).generate(new Random(seed));
+        report.append("generateMs;").append(toMillis(System.nanoTime()-start)).append("\n");
+        report.append("monsters;").append(testDungeon.getMonsterLength()).append("\n");
+        report.append("rewards;").append(testDungeon.getRewardLength()).append("\n");
+        report.append("potions;").append(testDungeon.getPotionLength()).append("\n");
+
+        start = System.nanoTime();
+        String asciiMap = DungeonLoader.toAsciiDungeon(testDungeon);
+        report.append("writeAsciiMs;").append(toMillis(System.nanoTime()-start)).append("\n");
+        start = System.nanoTime();
+        Dungeon loadedDungeon = DungeonLoader.loadAsciiDungeon(ByteBuffer.wrap(asciiMap.getBytes(StandardCharsets.US_ASCII)));
+        report.append("loadAsciiMs;").append(toMillis(System.nanoTime()-start)).append("\n");
+        report.append("loadedMonsters;").append(loadedDungeon.getMonsterLength()).append("\n");
+
+        start = System.nanoTime();
+        PlayMap testPlay = new PlayMap(testDungeon);
+        testPlay.startGame();
+        report.append("playMapMs;").append(toMillis(System.nanoTime()-start)).append("\n");
+
+        start = System.nanoTime();
+        double exitDistance = testPlay.getPaths().getDistance(testPlay.getExit(0), testPlay.getExit(1));
+        report.append("firstDistanceMs;").append(toMillis(System.nanoTime()-start)).append("\n");
+        report.append("exitDistance;").append(exitDistance).append("\n");
+
+        start = System.nanoTime();
+        for(int i=0;i<totalClones;i++){ testPlay.clone(); }
+        report.append("cloneMs;").append(toMillis((System.nanoTime()-start)/totalClones)).append("\n");
+
+        for(int c=0;c<controllers.length;c++){
+            int actions = 0;
+            int games = 0;
+            long elapsed = 0;
+            while(actions < totalActions){
+                testPlay.startGame();
+                Controller testAgent = createController(controllers[c], testPlay);
+                games++;
+                start = System.nanoTime();
+                while(!testPlay.isGameHalted() && actions < totalActions){
+                    testPlay.updateGame(testAgent.getNextAction());
+                    actions++;
+                }
+                elapsed += System.nanoTime()-start;
+            }
+            report.append(controllers[c]).append("NsPerAction;").append(elapsed/actions).append("\n");
+            report.append(controllers[c]).append("Games;").append(games).append("\n");
+        }
+        return report.toString();
+    }
+
+    /**
+     * Packs a corpus of 12x12 random levels into a level archive and times writing it 
+     * and decoding every level back from the memory-mapped file.
+     */
+    public String runCorpusBenchmark(int levels, long seed) throws IOException {
+        StringBuilder report = new StringBuilder();
+        report.append("corpusLevels;").append(levels).append("\n");
+        long start = System.nanoTime();
+        Dungeon[] corpus = new DungeonGenerator(12, 12, 25, 9, 6, 4).generateBatch(seed, levels);
+        report.append("generateMs;").append(toMillis(System.nanoTime()-start)).append("\n");
+
+        Path archiveFile = Files.createTempFile("corpus", ".dungeons");
+        try {
+            start = System.nanoTime();
+            DungeonArchive.write(archiveFile, Arrays.asList(corpus));
+            report.append("writeArchiveMs;").append(toMillis(System.nanoTime()-start)).append("\n");
+            report.append("archiveBytes;").append(Files.size(archiveFile)).append("\n");
+
+            start = System.nanoTime();
+            DungeonArchive archive = DungeonLoader.loadArchive(archiveFile);
+            long monsters = 0;
+            for(Dungeon level : archive){ monsters += level.getMonsterLength(); }
+            report.append("readArchiveMs;").append(toMillis(System.nanoTime()-start)).append("\n");
+            report.append("monsters;").append(monsters).append("\n");
+        } finally {
+            Files.deleteIfExists(archiveFile);
+        }
+        return report.toString();
+    }
+
+    protected Controller createController(String name, PlayMap testPlay) {
+        if(name.equals("ZombieController")){ return new ZombieController(testPlay, testPlay.getHero()); }
+        if(name.equals("RoombaController")){ return new RoombaController(testPlay, testPlay.getHero()); }
+        if(name.equals("PathfindingController")){ return new PathfindingController(testPlay, testPlay.getHero()); }
+        return new RandomController(testPlay, testPlay.getHero());
+    }
+
+    protected static double toMillis(long nanos){ return nanos/1000000.0; }
+
+    public void setOutputFolder(String outputFolder){ this.outputFolder = outputFolder; }
+
+    public static void writeFile(String filename, String line) throws IOException {
+        BufferedWriter outputWriter = null;
+        outputWriter = new BufferedWriter(new FileWriter(filename));
+        outputWriter.write(line);
+        outputWriter.flush();
+        outputWriter.close();
+    }
+
+    public static void main(String[] args) {
+        ScaleBenchmarkMode exp = new ScaleBenchmarkMode();
+        int[] sizes = { 256, 1024 };
+        for(int i=0; i<sizes.length; i++){
+            System.out.println("\n--------------\nMAP "+sizes[i]+"x"+sizes[i]+"\n--------------\n");
+            String report = exp.runBenchmark(sizes[i], sizes[i], 42);
+            System.out.println(report);
+            try {
+                writeFile(exp.outputFolder+"/scaleReport_"+sizes[i]+"x"+sizes[i]+".csv", report);
+            } catch(Exception e){
+                System.out.println(e.toString());
+            }
+        }
+        System.out.println("\n--------------\nLEVEL CORPUS\n--------------\n");
+        try {
+            String report = exp.runCorpusBenchmark(100000, 42);
+            System.out.println(report);
+            writeFile(exp.outputFolder+"/scaleReport_corpus.csv", report);
+        } catch(Exception e){
+            System.out.println(e.toString());
+        }
+    }
+}
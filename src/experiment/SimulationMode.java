@@ -7,17 +7,20 @@ import dungeon.DungeonLoader;
 import dungeon.play.PlayMap;
 import dungeon.visualization.PlayVisualizer;
 import util.math2d.Matrix2D;
+import util.metrics.LatencyHistogram;
+import util.statics.RandomNumberManager;
 import util.statics.StatisticUtils;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Scanner;
-import java.io.File;
+import java.nio.file.Paths;
 
 public class SimulationMode {
-    final int totalRuns = 10;
-    final int maxActions = 300;
+    int totalRuns = 10;
+    int maxActions = 300;
+    long seed;
+    boolean seeded = false; // seeded runs match the single-controller reports of ShardedExperimentMode
     String outputFolder = "./testResults/";
 
     double[] hpRemaining;
@@ -26,6 +29,7 @@ public class SimulationMode {
     double[] potionsDrunk;
     double[] actionsTaken;
     double[] tilesExplored;
+    LatencyHistogram decisionTime; // nanoseconds per getNextAction(), over all runs on the map
 
     public void runExperiment(String filename) {
         String[] temp = filename.split("/");
@@ -33,27 +37,32 @@ public class SimulationMode {
 
         initMetrics();
 
-        String asciiMap = "";
+        Dungeon testDungeon;
         try {
-            asciiMap = new Scanner(new File(filename)).useDelimiter("\\A").next();
+            testDungeon = DungeonLoader.loadAsciiDungeon(Paths.get(filename));
         } catch(Exception e){
             System.out.println(e.toString());
+            return;
         }
-        Dungeon testDungeon = DungeonLoader.loadAsciiDungeon(asciiMap);
         PlayMap testPlay = new PlayMap(testDungeon);
         for(int i=0;i<totalRuns;i++){
 
             System.out.println("------ Simulación " + i + " ------");
 
+            long runSeed = CompetitionMode.runSeed(seed, mapFile, i);
+            if(seeded){ RandomNumberManager.setSeed(runSeed); }
             testPlay.startGame();
 
+            if(seeded){ RandomNumberManager.setSeed(RandomNumberManager.mixSeed(runSeed, 0)); }
             MCTSController testAgent = new MCTSController(testPlay, testPlay.getHero(), 10);
             //PathfindingController testAgent = new PathfindingController(testPlay, testPlay.getHero());
 
             int actions = 0;
 
             while(!testPlay.isGameHalted() && actions < maxActions){
+                long start = System.nanoTime();
                 int action = testAgent.getNextAction();
+                decisionTime.record(System.nanoTime()-start);
                 String action_name = "";
                 if (action == 0) {action_name = "UP";}
                 else if (action == 1) {action_name = "RIGHT";}
@@ -90,15 +99,16 @@ public class SimulationMode {
         potionsDrunk = new double[totalRuns];
         actionsTaken = new double[totalRuns];
         tilesExplored = new double[totalRuns];
+        decisionTime = new LatencyHistogram();
     }
 
     protected void updateMetrics(int index, PlayMap finishedMap, int actions) {
         hpRemaining[index] = finishedMap.getHero().getHitpoints();
-        monstersKilled[index] = Matrix2D.count(finishedMap.getDeadMonsterArray());
-        treasuresCollected[index] = Matrix2D.count(finishedMap.getDeadRewardArray());
-        potionsDrunk[index] = Matrix2D.count(finishedMap.getDeadPotionArray());
+        monstersKilled[index] = finishedMap.getDeadMonsterCount();
+        treasuresCollected[index] = finishedMap.getDeadRewardCount();
+        potionsDrunk[index] = finishedMap.getDeadPotionCount();
         actionsTaken[index] = actions;
-        tilesExplored[index] = Matrix2D.count(finishedMap.getAnyVisited());
+        tilesExplored[index] = finishedMap.getVisitedTileCount();
     }
 
     protected String printMetrics(int maxActions){
@@ -118,6 +128,7 @@ public class SimulationMode {
         int timesUncompleted = 0;
         for(int i=0;i<actionsTaken.length;i++){ if(actionsTaken[i]==maxActions){ timesUncompleted++; } }
         result+="timesUncompleted: "+timesUncompleted+"\n";
+        result+="decisionNs p50/p90/p99/max: "+decisionTime.getPercentile(50)+" "+decisionTime.getPercentile(90)+" "+decisionTime.getPercentile(99)+" "+decisionTime.getMax()+"\n";
         return result;
     }
 
@@ -145,6 +156,12 @@ public class SimulationMode {
     }
 
     public void setOutputFolder(String outputFolder){ this.outputFolder = outputFolder; }
+    public void setRuns(int totalRuns){ this.totalRuns = totalRuns; }
+    public void setMaxActions(int maxActions){ this.maxActions = maxActions; }
+    public void setSeed(long seed){
+        this.seed = seed;
+        this.seeded = true;
+    }
 
     public static void writeFile(String filename, String line) throws IOException {
         BufferedWriter outputWriter = null;
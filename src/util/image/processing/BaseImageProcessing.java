@@ -1,8 +1,9 @@
 package util.image.processing;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.Vector;
 
+import util.math2d.IntGrid;
 import util.math2d.Matrix2D;
 import util.math2d.Point2D;
 
@@ -10,12 +11,16 @@ public class BaseImageProcessing {
 	public static Vector<boolean[][]> getSegments(boolean[][] base, int mode){
 		Vector<boolean[][]> result = new Vector<boolean[][]>();
 		boolean[][] binaryImg = Matrix2D.copy(base);
-		Point2D firstNonEmpty = getFirstNonEmpty(binaryImg);
-		while(firstNonEmpty!=null){
-			boolean[][] currSegment = new boolean[base.length][base[0].length];
-			floodEraseFrom(binaryImg,firstNonEmpty,mode,currSegment);
-			result.add(currSegment);
-			firstNonEmpty = getFirstNonEmpty(binaryImg);
+		int[] stack = new int[64];
+		// single sweep: erased segments are never revisited, so scanning just resumes where it stopped
+		for(int x=0;x<binaryImg.length;x++){
+			for(int y=0;y<binaryImg[0].length;y++){
+				if(binaryImg[x][y]){
+					boolean[][] currSegment = new boolean[base.length][base[0].length];
+					stack = floodErase(binaryImg,x,y,mode,currSegment,stack);
+					result.add(currSegment);
+				}
+			}
 		}
 		return result;
 	}
@@ -55,41 +60,139 @@ public class BaseImageProcessing {
     }
 
 	protected static void floodEraseFrom(boolean[][] pixels, Point2D startingPixel, int mode, boolean[][] targetPixels){
-		int x=(int)(startingPixel.x);
-		int y=(int)(startingPixel.y);
-		if(pixels[x][y]){
-			LinkedList<Point2D> queue = new LinkedList<Point2D>();
-			queue.add(new Point2D(x,y));
-			while(!queue.isEmpty()) {
-				Point2D point = queue.remove();
-				if(point.x>=0 && point.y>=0 && point.x<pixels.length && point.y<pixels[0].length){
-					//targetPixels[(int)(point.x)][(int)(point.y)]=false;
-					if(pixels[(int)(point.x)][(int)(point.y)]){
-						pixels[(int)(point.x)][(int)(point.y)]=false;
-						targetPixels[(int)(point.x)][(int)(point.y)]=true;
-						//System.out.println(Matrix2D.print(targetPixels));
-						//System.out.println("-------------------------");
-						if(mode==0){
-							queue.add(new Point2D(point.x+1, point.y));
-							queue.add(new Point2D(point.x-1, point.y));
-							queue.add(new Point2D(point.x, point.y+1));
-							queue.add(new Point2D(point.x, point.y-1));
-						} else if(mode==1){
-							queue.add(new Point2D(point.x+1, point.y+1));
-							queue.add(new Point2D(point.x+1, point.y));
-							queue.add(new Point2D(point.x+1, point.y-1));
-							queue.add(new Point2D(point.x-1, point.y+1));
-							queue.add(new Point2D(point.x-1, point.y));
-							queue.add(new Point2D(point.x-1, point.y-1));
-							queue.add(new Point2D(point.x, point.y+1));
-							queue.add(new Point2D(point.x, point.y-1));
-						} else {
-							System.out.println("wrong flood erase mode");
+		floodErase(pixels,(int)(startingPixel.x),(int)(startingPixel.y),mode,targetPixels,new int[64]);
+	}
+	
+	/**
+	 * Scanline flood fill: erases from pixels (and marks in targetPixels, if not null) the 
+	 * segment containing (x,y). Each popped seed is grown into a full vertical run of the 
+	 * column, and only the first pixel of each run in the neighbouring columns is pushed. 
+	 * Seeds are encoded as x*height+y in the given stack, which grows if needed and is 
+	 * returned so that callers can reuse it across fills.
+	 * @param mode 0 for 4-connectivity, 1 for 8-connectivity
+	 */
+	protected static int[] floodErase(boolean[][] pixels, int x, int y, int mode, boolean[][] targetPixels, int[] stack){
+		if(mode!=0 && mode!=1){
+			System.out.println("wrong flood erase mode");
+			return stack;
+		}
+		int width = pixels.length;
+		int height = pixels[0].length;
+		if(x<0 || y<0 || x>=width || y>=height || !pixels[x][y]){ return stack; }
+		int diagonal = (mode==1) ? 1 : 0;
+		int size = 0;
+		stack[size++] = x*height+y;
+		while(size>0){
+			int seed = stack[--size];
+			int sx = seed/height;
+			int sy = seed-sx*height;
+			boolean[] column = pixels[sx];
+			if(!column[sy]){ continue; }
+			int y1 = sy;
+			while(y1>0 && column[y1-1]){ y1--; }
+			int y2 = sy;
+			while(y2<height-1 && column[y2+1]){ y2++; }
+			for(int yy=y1;yy<=y2;yy++){
+				column[yy]=false;
+				if(targetPixels!=null){ targetPixels[sx][yy]=true; }
+			}
+			int from = Math.max(0, y1-diagonal);
+			int to = Math.min(height-1, y2+diagonal);
+			for(int nx=sx-1;nx<=sx+1;nx+=2){
+				if(nx<0 || nx>=width){ continue; }
+				boolean[] neighbour = pixels[nx];
+				boolean inRun = false;
+				for(int yy=from;yy<=to;yy++){
+					if(neighbour[yy]){
+						if(!inRun){
+							if(size==stack.length){ stack = Arrays.copyOf(stack, stack.length*2); }
+							stack[size++] = nx*height+yy;
+							inRun = true;
+						}
+					} else {
+						inRun = false;
+					}
+				}
+			}
+		}
+		return stack;
+	}
+	
+	/**
+	 * Labels the connected segments of pixels in one raster pass with union-find, 
+	 * followed by a pass that resolves provisional labels. Background stays 0 and 
+	 * segments are numbered 1..n in the order they are first met (by x, then y), 
+	 * the same order as getSegments.
+	 * @param mode 0 for 4-connectivity, 1 for 8-connectivity
+	 */
+	public static IntGrid labelSegments(boolean[][] pixels, int mode){
+		int width = pixels.length;
+		int height = pixels[0].length;
+		IntGrid labels = new IntGrid(width, height);
+		int[] label = labels.data;
+		int[] parent = new int[width*height/2+2];
+		int next = 1;
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				if(!pixels[x][y]){ continue; }
+				int current = 0;
+				// already labelled neighbours: previous pixel in the column and previous column
+				if(y>0 && pixels[x][y-1]){ current = label[labels.index(x,y-1)]; }
+				if(x>0){
+					for(int dy=-mode;dy<=mode;dy++){
+						int ny = y+dy;
+						if(ny<0 || ny>=height || !pixels[x-1][ny]){ continue; }
+						int other = label[labels.index(x-1,ny)];
+						if(current==0){ 
+							current = other; 
+						} else if(other!=current){ 
+							union(parent, current, other); 
 						}
 					}
 				}
+				if(current==0){
+					if(next==parent.length){ parent = Arrays.copyOf(parent, parent.length*2); }
+					parent[next] = next;
+					current = next++;
+				}
+				label[labels.index(x,y)] = current;
+			}
+		}
+		// resolve to roots and renumber consecutively
+		int[] compact = new int[next];
+		int segments = 0;
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				int i = labels.index(x,y);
+				if(label[i]==0){ continue; }
+				int root = find(parent, label[i]);
+				if(compact[root]==0){ compact[root] = ++segments; }
+				label[i] = compact[root];
 			}
 		}
+		return labels;
+	}
+	
+	public static int countSegments(boolean[][] pixels, int mode){
+		return Matrix2D.maxValue(labelSegments(pixels, mode));
+	}
+	
+	static int find(int[] parent, int i){
+		while(parent[i]!=i){
+			parent[i] = parent[parent[i]];	// path halving
+			i = parent[i];
+		}
+		return i;
+	}
+	
+	static void union(int[] parent, int a, int b){
+		int rootA = find(parent, a);
+		int rootB = find(parent, b);
+		if(rootA<rootB){ 
+			parent[rootB] = rootA; 
+		} else if(rootB<rootA){ 
+			parent[rootA] = rootB; 
+		}
 	}
 	
 	public static boolean[][] getFloodFilledArea(boolean[][] pixels, int startingX, int startingY, int mode){ return getFloodFilledArea(pixels,new Point2D(startingX,startingY), mode); }
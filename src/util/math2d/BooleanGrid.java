@@ -0,0 +1,44 @@
+package util.math2d;
+
+import java.util.Arrays;
+
+public class BooleanGrid extends Grid {
+	public final boolean[] data;
+	
+	public BooleanGrid(int width, int height){
+		super(width,height);
+		this.data = new boolean[width*height];
+	}
+	
+	/**
+	 * Flattens a jagged [x][y] array, as used throughout Matrix2D.
+	 */
+	public BooleanGrid(boolean[][] base){
+		this(base.length, base[0].length);
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				data[y*width+x]=base[x][y];
+			}
+		}
+	}
+	
+	public boolean get(int x, int y){ return data[y*width+x]; }
+	public void set(int x, int y, boolean value){ data[y*width+x]=value; }
+	public void fill(boolean value){ Arrays.fill(data, value); }
+	
+	public BooleanGrid copy(){
+		BooleanGrid result = new BooleanGrid(width,height);
+		System.arraycopy(data, 0, result.data, 0, data.length);
+		return result;
+	}
+	
+	public boolean[][] toArray(){
+		boolean[][] result = new boolean[width][height];
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				result[x][y]=data[y*width+x];
+			}
+		}
+		return result;
+	}
+}
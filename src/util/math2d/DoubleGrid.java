@@ -0,0 +1,44 @@
+package util.math2d;
+
+import java.util.Arrays;
+
+public class DoubleGrid extends Grid {
+	public final double[] data;
+	
+	public DoubleGrid(int width, int height){
+		super(width,height);
+		this.data = new double[width*height];
+	}
+	
+	/**
+	 * Flattens a jagged [x][y] array, as used throughout Matrix2D.
+	 */
+	public DoubleGrid(double[][] base){
+		this(base.length, base[0].length);
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				data[y*width+x]=base[x][y];
+			}
+		}
+	}
+	
+	public double get(int x, int y){ return data[y*width+x]; }
+	public void set(int x, int y, double value){ data[y*width+x]=value; }
+	public void fill(double value){ Arrays.fill(data, value); }
+	
+	public DoubleGrid copy(){
+		DoubleGrid result = new DoubleGrid(width,height);
+		System.arraycopy(data, 0, result.data, 0, data.length);
+		return result;
+	}
+	
+	public double[][] toArray(){
+		double[][] result = new double[width][height];
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				result[x][y]=data[y*width+x];
+			}
+		}
+		return result;
+	}
+}
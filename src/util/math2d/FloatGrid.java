@@ -0,0 +1,44 @@
+package util.math2d;
+
+import java.util.Arrays;
+
+public class FloatGrid extends Grid {
+	public final float[] data;
+	
+	public FloatGrid(int width, int height){
+		super(width,height);
+		this.data = new float[width*height];
+	}
+	
+	/**
+	 * Flattens a jagged [x][y] array, as used throughout Matrix2D.
+	 */
+	public FloatGrid(float[][] base){
+		this(base.length, base[0].length);
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				data[y*width+x]=base[x][y];
+			}
+		}
+	}
+	
+	public float get(int x, int y){ return data[y*width+x]; }
+	public void set(int x, int y, float value){ data[y*width+x]=value; }
+	public void fill(float value){ Arrays.fill(data, value); }
+	
+	public FloatGrid copy(){
+		FloatGrid result = new FloatGrid(width,height);
+		System.arraycopy(data, 0, result.data, 0, data.length);
+		return result;
+	}
+	
+	public float[][] toArray(){
+		float[][] result = new float[width][height];
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				result[x][y]=data[y*width+x];
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,21 @@
+package util.math2d;
+
+/**
+ * Base of the flat grid types: a width x height matrix stored in a single 
+ * primitive array in row-major order, i.e. cell (x,y) lives at index y*width+x.
+ * Kernels over grids live in Matrix2D, next to their jagged array counterparts.
+ */
+public abstract class Grid {
+	public final int width;
+	public final int height;
+	
+	protected Grid(int width, int height){
+		this.width = width;
+		this.height = height;
+	}
+	
+	public int size(){ return width*height; }
+	public int index(int x, int y){ return y*width+x; }
+	public boolean isInside(int x, int y){ return (x>=0 && x<width && y>=0 && y<height); }
+	public boolean sameSize(Grid other){ return other!=null && other.width==width && other.height==height; }
+}
@@ -0,0 +1,44 @@
+package util.math2d;
+
+import java.util.Arrays;
+
+public class IntGrid extends Grid {
+	public final int[] data;
+	
+	public IntGrid(int width, int height){
+		super(width,height);
+		this.data = new int[width*height];
+	}
+	
+	/**
+	 * Flattens a jagged [x][y] array, as used throughout Matrix2D.
+	 */
+	public IntGrid(int[][] base){
+		this(base.length, base[0].length);
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				data[y*width+x]=base[x][y];
+			}
+		}
+	}
+	
+	public int get(int x, int y){ return data[y*width+x]; }
+	public void set(int x, int y, int value){ data[y*width+x]=value; }
+	public void fill(int value){ Arrays.fill(data, value); }
+	
+	public IntGrid copy(){
+		IntGrid result = new IntGrid(width,height);
+		System.arraycopy(data, 0, result.data, 0, data.length);
+		return result;
+	}
+	
+	public int[][] toArray(){
+		int[][] result = new int[width][height];
+		for(int x=0;x<width;x++){
+			for(int y=0;y<height;y++){
+				result[x][y]=data[y*width+x];
+			}
+		}
+		return result;
+	}
+}
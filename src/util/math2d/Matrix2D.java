@@ -1,5 +1,6 @@
 package util.math2d;
 
+import java.util.Arrays;
 import java.util.Vector;
 
 public class Matrix2D {
@@ -1129,4 +1130,272 @@ public class Matrix2D {
 		
 	}
 	*/ 
+	
+	// ----------------------------------------------------------------
+	// FLAT GRID kernels: write into dest, which may be one of the operands 
+	// (in place) or a preallocated grid reused across calls. They return dest, 
+	// or null if the grids do not match in size, and never allocate.
+	// ----------------------------------------------------------------
+	
+	public static BooleanGrid union(BooleanGrid base, BooleanGrid addition, BooleanGrid dest){
+		if(base==null || !base.sameSize(addition) || !base.sameSize(dest)){ return null; }
+		boolean[] a = base.data, b = addition.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i] || b[i]; }
+		return dest;
+	}
+	public static BooleanGrid intersection(BooleanGrid base, BooleanGrid addition, BooleanGrid dest){
+		if(base==null || !base.sameSize(addition) || !base.sameSize(dest)){ return null; }
+		boolean[] a = base.data, b = addition.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i] && b[i]; }
+		return dest;
+	}
+	public static BooleanGrid subtract(BooleanGrid base, BooleanGrid subtracted, BooleanGrid dest){
+		if(base==null || !base.sameSize(subtracted) || !base.sameSize(dest)){ return null; }
+		boolean[] a = base.data, b = subtracted.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i] && !b[i]; }
+		return dest;
+	}
+	public static int count(BooleanGrid base){
+		if(base==null){ return 0; }
+		boolean[] a = base.data;
+		int result = 0;
+		for(int i=0;i<a.length;i++){ if(a[i]){ result++; } }
+		return result;
+	}
+	
+	public static IntGrid add(IntGrid base, IntGrid addition, IntGrid dest){
+		if(base==null || !base.sameSize(addition) || !base.sameSize(dest)){ return null; }
+		int[] a = base.data, b = addition.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]+b[i]; }
+		return dest;
+	}
+	public static IntGrid add(IntGrid base, int value, IntGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		int[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]+value; }
+		return dest;
+	}
+	public static IntGrid subtract(IntGrid base, IntGrid subtracted, IntGrid dest){
+		if(base==null || !base.sameSize(subtracted) || !base.sameSize(dest)){ return null; }
+		int[] a = base.data, b = subtracted.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]-b[i]; }
+		return dest;
+	}
+	public static IntGrid subtract(IntGrid base, int value, IntGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		int[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]-value; }
+		return dest;
+	}
+	public static IntGrid max(IntGrid base, int maxVal, IntGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		int[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = Math.max(a[i],maxVal); }
+		return dest;
+	}
+	public static IntGrid min(IntGrid base, int minVal, IntGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		int[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = Math.min(a[i],minVal); }
+		return dest;
+	}
+	public static int maxValue(IntGrid base){
+		int result = Integer.MIN_VALUE;
+		if(base==null){ return result; }
+		int[] a = base.data;
+		for(int i=0;i<a.length;i++){
+			if(a[i]>result){ result = a[i]; }
+		}
+		return result;
+	}
+	public static int minValue(IntGrid base){
+		int result = Integer.MAX_VALUE;
+		if(base==null){ return result; }
+		int[] a = base.data;
+		for(int i=0;i<a.length;i++){
+			if(a[i]<result){ result = a[i]; }
+		}
+		return result;
+	}
+	public static int count(IntGrid base){
+		if(base==null){ return 0; }
+		int[] a = base.data;
+		int result = 0;
+		for(int i=0;i<a.length;i++){ result+=a[i]; }
+		return result;
+	}
+	
+	public static FloatGrid add(FloatGrid base, FloatGrid addition, FloatGrid dest){
+		if(base==null || !base.sameSize(addition) || !base.sameSize(dest)){ return null; }
+		float[] a = base.data, b = addition.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]+b[i]; }
+		return dest;
+	}
+	public static FloatGrid add(FloatGrid base, float value, FloatGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		float[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]+value; }
+		return dest;
+	}
+	public static FloatGrid subtract(FloatGrid base, FloatGrid subtracted, FloatGrid dest){
+		if(base==null || !base.sameSize(subtracted) || !base.sameSize(dest)){ return null; }
+		float[] a = base.data, b = subtracted.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]-b[i]; }
+		return dest;
+	}
+	public static FloatGrid subtract(FloatGrid base, float value, FloatGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		float[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]-value; }
+		return dest;
+	}
+	public static FloatGrid max(FloatGrid base, float maxVal, FloatGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		float[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = Math.max(a[i],maxVal); }
+		return dest;
+	}
+	public static FloatGrid min(FloatGrid base, float minVal, FloatGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		float[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = Math.min(a[i],minVal); }
+		return dest;
+	}
+	public static float maxValue(FloatGrid base){
+		float result = Float.NEGATIVE_INFINITY;
+		if(base==null){ return result; }
+		float[] a = base.data;
+		for(int i=0;i<a.length;i++){
+			if(Float.isNaN(a[i])){ continue; }
+			if(a[i]>result){ result = a[i]; }
+		}
+		return result;
+	}
+	public static float minValue(FloatGrid base){
+		float result = Float.POSITIVE_INFINITY;
+		if(base==null){ return result; }
+		float[] a = base.data;
+		for(int i=0;i<a.length;i++){
+			if(a[i]<result){ result = a[i]; }
+		}
+		return result;
+	}
+	public static float count(FloatGrid base){
+		if(base==null){ return 0; }
+		float[] a = base.data;
+		float result = 0;
+		for(int i=0;i<a.length;i++){ result+=a[i]; }
+		return result;
+	}
+	public static FloatGrid normalize(FloatGrid base, FloatGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		float minVal = Matrix2D.minValue(base);
+		float maxVal = Matrix2D.maxValue(base);
+		float range = maxVal - minVal;
+		float[] a = base.data, r = dest.data;
+		if(range==0){ 
+			Arrays.fill(r, 0);
+			return dest;
+		}
+		for(int i=0;i<r.length;i++){ r[i] = (a[i]-minVal)/range; }
+		return dest;
+	}
+	public static FloatGrid normalize(FloatGrid base, float zeroValue, float oneValue, FloatGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		float range = oneValue - zeroValue;
+		float[] a = base.data, r = dest.data;
+		if(range==0){ 
+			Arrays.fill(r, 0);
+			return dest;
+		}
+		for(int i=0;i<r.length;i++){ r[i] = Math.min(1,Math.max((a[i]-zeroValue)/range,0)); }		// clamp
+		return dest;
+	}
+	
+	public static DoubleGrid add(DoubleGrid base, DoubleGrid addition, DoubleGrid dest){
+		if(base==null || !base.sameSize(addition) || !base.sameSize(dest)){ return null; }
+		double[] a = base.data, b = addition.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]+b[i]; }
+		return dest;
+	}
+	public static DoubleGrid add(DoubleGrid base, double value, DoubleGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		double[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]+value; }
+		return dest;
+	}
+	public static DoubleGrid subtract(DoubleGrid base, DoubleGrid subtracted, DoubleGrid dest){
+		if(base==null || !base.sameSize(subtracted) || !base.sameSize(dest)){ return null; }
+		double[] a = base.data, b = subtracted.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]-b[i]; }
+		return dest;
+	}
+	public static DoubleGrid subtract(DoubleGrid base, double value, DoubleGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		double[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = a[i]-value; }
+		return dest;
+	}
+	public static DoubleGrid max(DoubleGrid base, double maxVal, DoubleGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		double[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = Math.max(a[i],maxVal); }
+		return dest;
+	}
+	public static DoubleGrid min(DoubleGrid base, double minVal, DoubleGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		double[] a = base.data, r = dest.data;
+		for(int i=0;i<r.length;i++){ r[i] = Math.min(a[i],minVal); }
+		return dest;
+	}
+	public static double maxValue(DoubleGrid base){
+		double result = Double.NEGATIVE_INFINITY;
+		if(base==null){ return result; }
+		double[] a = base.data;
+		for(int i=0;i<a.length;i++){
+			if(Double.isNaN(a[i])){ continue; }
+			if(a[i]>result){ result = a[i]; }
+		}
+		return result;
+	}
+	public static double minValue(DoubleGrid base){
+		double result = Double.POSITIVE_INFINITY;
+		if(base==null){ return result; }
+		double[] a = base.data;
+		for(int i=0;i<a.length;i++){
+			if(a[i]<result){ result = a[i]; }
+		}
+		return result;
+	}
+	public static double count(DoubleGrid base){
+		if(base==null){ return 0; }
+		double[] a = base.data;
+		double result = 0;
+		for(int i=0;i<a.length;i++){ result+=a[i]; }
+		return result;
+	}
+	public static DoubleGrid normalize(DoubleGrid base, DoubleGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		double minVal = Matrix2D.minValue(base);
+		double maxVal = Matrix2D.maxValue(base);
+		double range = maxVal - minVal;
+		double[] a = base.data, r = dest.data;
+		if(range==0){ 
+			Arrays.fill(r, 0);
+			return dest;
+		}
+		for(int i=0;i<r.length;i++){ r[i] = (a[i]-minVal)/range; }
+		return dest;
+	}
+	public static DoubleGrid normalize(DoubleGrid base, double zeroValue, double oneValue, DoubleGrid dest){
+		if(base==null || !base.sameSize(dest)){ return null; }
+		double range = oneValue - zeroValue;
+		double[] a = base.data, r = dest.data;
+		if(range==0){ 
+			Arrays.fill(r, 0);
+			return dest;
+		}
+		for(int i=0;i<r.length;i++){ r[i] = Math.min(1,Math.max((a[i]-zeroValue)/range,0)); }		// clamp
+		return dest;
+	}
 }
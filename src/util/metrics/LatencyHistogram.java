@@ -0,0 +1,129 @@
+package util.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values (typically nanoseconds). Buckets are log-linear: 
+ * 8 sub-buckets per power of two, so any reported percentile is within 12.5% of the 
+ * recorded value while the whole range of a long fits in under 500 counters.
+ */
+public class LatencyHistogram {
+	static final int SUB_BUCKET_BITS = 3;
+	static final int SUB_BUCKETS = 1<<SUB_BUCKET_BITS;
+	static final int BUCKETS = (64-SUB_BUCKET_BITS)*SUB_BUCKETS;
+	
+	final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	final LongAdder total = new LongAdder();
+	final LongAdder sum = new LongAdder();
+	final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	public void record(long value){
+		if(value<0){ value = 0; }
+		counts.incrementAndGet(bucketOf(value));
+		total.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+	
+	public long getCount(){ return total.sum(); }
+	public long getMax(){ return max.get(); }
+	public double getMean(){ 
+		long count = total.sum();
+		return (count==0) ? 0 : (double)sum.sum()/count; 
+	}
+	
+	/**
+	 * @param percentile in [0,100]
+	 * @return upper bound of the bucket holding the given percentile (capped by the maximum), 0 if empty
+	 */
+	public long getPercentile(double percentile){
+		long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for(int i=0;i<BUCKETS;i++){ 
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if(count==0){ return 0; }
+		long rank = Math.max(1, (long)Math.ceil(percentile/100.0*count));
+		long seen = 0;
+		for(int i=0;i<BUCKETS;i++){
+			seen += snapshot[i];
+			if(seen>=rank){ return Math.min(upperBound(i), getMax()); }
+		}
+		return getMax();
+	}
+	
+	/** Adds every value recorded by other, e.g. to combine the histograms of several workers. */
+	public void add(LatencyHistogram other){
+		for(int i=0;i<BUCKETS;i++){ 
+			long count = other.counts.get(i);
+			if(count>0){ counts.addAndGet(i, count); }
+		}
+		total.add(other.total.sum());
+		sum.add(other.sum.sum());
+		max.accumulate(other.getMax());
+	}
+	
+	/**
+	 * @return the histogram as "sum max bucket:count ...", listing only non-empty buckets 
+	 * (see decode)
+	 */
+	public String encode(){
+		StringBuilder result = new StringBuilder();
+		result.append(sum.sum()).append(' ').append(getMax());
+		for(int i=0;i<BUCKETS;i++){
+			long count = counts.get(i);
+			if(count>0){ result.append(' ').append(i).append(':').append(count); }
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if text was not produced by encode
+	 */
+	public static LatencyHistogram decode(String text){
+		LatencyHistogram result = new LatencyHistogram();
+		String[] parts = text.trim().split(" ");
+		try {
+			result.sum.add(Long.parseLong(parts[0]));
+			result.max.accumulate(Long.parseLong(parts[1]));
+			for(int p=2;p<parts.length;p++){
+				int separator = parts[p].indexOf(':');
+				int bucket = Integer.parseInt(parts[p].substring(0, separator));
+				long count = Long.parseLong(parts[p].substring(separator+1));
+				result.counts.addAndGet(bucket, count);
+				result.total.add(count);
+			}
+		} catch(RuntimeException e){
+			throw new IllegalArgumentException("Malformed histogram: "+text, e);
+		}
+		return result;
+	}
+	
+	public void reset(){
+		for(int i=0;i<BUCKETS;i++){ counts.set(i, 0); }
+		total.reset();
+		sum.reset();
+		max.reset();
+	}
+	
+	static int bucketOf(long value){
+		if(value<SUB_BUCKETS){ return (int)value; }
+		int exponent = 63-Long.numberOfLeadingZeros(value);
+		int subBucket = (int)(value>>>(exponent-SUB_BUCKET_BITS)) & (SUB_BUCKETS-1);
+		return ((exponent-SUB_BUCKET_BITS+1)<<SUB_BUCKET_BITS) | subBucket;
+	}
+	
+	static long lowerBound(int bucket){
+		if(bucket<SUB_BUCKETS){ return bucket; }
+		int exponent = (bucket>>>SUB_BUCKET_BITS)+SUB_BUCKET_BITS-1;
+		return (long)(SUB_BUCKETS | (bucket & (SUB_BUCKETS-1))) << (exponent-SUB_BUCKET_BITS);
+	}
+	
+	static long upperBound(int bucket){
+		if(bucket==BUCKETS-1){ return Long.MAX_VALUE; }
+		return lowerBound(bucket+1)-1;
+	}
+}
@@ -0,0 +1,124 @@
+package util.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of named counters and latency histograms for the hot paths 
+ * (game updates, clones, pathfinding, MCTS and Q-learning). 
+ * <p>
+ * Metrics are off unless the JVM is started with -Ddungeon.metrics=true. ENABLED is a 
+ * constant, so the instrumented code guards every measurement with it and pays nothing 
+ * when metrics are off. With -Ddungeon.metrics.file=path the report is also written to 
+ * that file every -Ddungeon.metrics.period milliseconds (10000 by default) and at exit.
+ */
+public class Metrics {
+	public static final boolean ENABLED = Boolean.getBoolean("dungeon.metrics");
+	
+	static final ConcurrentHashMap<String,LongAdder> counters = new ConcurrentHashMap<String,LongAdder>();
+	static final ConcurrentHashMap<String,LatencyHistogram> histograms = new ConcurrentHashMap<String,LatencyHistogram>();
+	static ScheduledExecutorService dumper;
+	static volatile Path dumpFile;
+	static boolean exitDumpInstalled;
+	
+	static {
+		String file = System.getProperty("dungeon.metrics.file");
+		if(ENABLED && file!=null){ 
+			startDump(Paths.get(file), Long.getLong("dungeon.metrics.period", 10000)); 
+		}
+	}
+	
+	public static LongAdder counter(String name){ 
+		return counters.computeIfAbsent(name, k -> new LongAdder()); 
+	}
+	public static LatencyHistogram histogram(String name){ 
+		return histograms.computeIfAbsent(name, k -> new LatencyHistogram()); 
+	}
+	
+	public static void reset(){
+		for(LongAdder counter : counters.values()){ counter.reset(); }
+		for(LatencyHistogram histogram : histograms.values()){ histogram.reset(); }
+	}
+	
+	/**
+	 * Semicolon separated report, one metric per line sorted by name. Counters have a single 
+	 * value; histograms report count, mean, p50, p90, p99 and max.
+	 */
+	public static String report(){
+		StringBuilder result = new StringBuilder();
+		result.append("counter;value\n");
+		for(String name : new TreeMap<String,LongAdder>(counters).keySet()){
+			result.append(name).append(';').append(counters.get(name).sum()).append('\n');
+		}
+		result.append("histogram;count;mean;p50;p90;p99;max\n");
+		for(String name : new TreeMap<String,LatencyHistogram>(histograms).keySet()){
+			LatencyHistogram histogram = histograms.get(name);
+			result.append(name).append(';').append(histogram.getCount());
+			result.append(';').append(Math.round(histogram.getMean()));
+			result.append(';').append(histogram.getPercentile(50));
+			result.append(';').append(histogram.getPercentile(90));
+			result.append(';').append(histogram.getPercentile(99));
+			result.append(';').append(histogram.getMax()).append('\n');
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * Writes the report to a temporary file and moves it over the target, so readers 
+	 * never see a partial report.
+	 */
+	public static void dump(Path file) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, report().getBytes(StandardCharsets.UTF_8));
+			Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	public static synchronized void startDump(Path file, long periodMillis){
+		stopDump();
+		dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-dump");
+			thread.setDaemon(true);
+			return thread;
+		});
+		dumper.scheduleAtFixedRate(() -> dumpQuietly(file), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		dumpFile = file;
+		if(!exitDumpInstalled){
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				Path target = dumpFile;
+				if(target!=null){ dumpQuietly(target); }
+			}, "metrics-exit-dump"));
+			exitDumpInstalled = true;
+		}
+	}
+	
+	public static synchronized void stopDump(){
+		dumpFile = null;
+		if(dumper!=null){ 
+			dumper.shutdownNow(); 
+			dumper = null;
+		}
+	}
+	
+	static void dumpQuietly(Path file){
+		try {
+			dump(file);
+		} catch(IOException e){
+			System.out.println("Could not write metrics to "+file+": "+e.toString());
+		}
+	}
+}
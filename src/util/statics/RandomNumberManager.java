@@ -1,10 +1,84 @@
 package util.statics;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Random;
 
 public class RandomNumberManager {
 	static Random rand = new Random();
 	
+	/**
+	 * Restarts the shared sequence from the given seed, so that everything drawing from it 
+	 * afterwards (monster damage, random controllers) is reproducible.
+	 * @param seed
+	 */
+	public static void setSeed(long seed){
+		rand.setSeed(seed);
+	}
+	
+	/**
+	 * Captures the position in the shared sequence, e.g. for checkpointing a training run.
+	 * @return serialized state of the generator (see setState)
+	 */
+	public static byte[] getState(){
+		return serialize(rand);
+	}
+	
+	/**
+	 * Continues the shared sequence from a state returned by getState.
+	 * @param state
+	 */
+	public static void setState(byte[] state){
+		rand = deserialize(state);
+	}
+	
+	/**
+	 * @param random
+	 * @return serialized state of any generator, from which deserialize continues its sequence
+	 */
+	public static byte[] serialize(Random random){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes)){
+			out.writeObject(random);
+		} catch(IOException e){
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * @param state
+	 * @return generator continuing the sequence of the serialized one
+	 * @throws IllegalArgumentException if state is not a serialized Random
+	 */
+	public static Random deserialize(byte[] state){
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state))){
+			in.setObjectInputFilter(info -> (info.serialClass()==null || info.serialClass()==Random.class) ? 
+				ObjectInputFilter.Status.ALLOWED : ObjectInputFilter.Status.REJECTED);
+			return (Random)in.readObject();
+		} catch(IOException | ClassNotFoundException | ClassCastException e){
+			throw new IllegalArgumentException("Not a random generator state", e);
+		}
+	}
+	
+	/**
+	 * Derives an independent seed for the index-th unit of work from a base seed 
+	 * (SplitMix64 finalizer, so that consecutive indices give unrelated seeds).
+	 * @param seed
+	 * @param index
+	 * @return derived seed
+	 */
+	public static long mixSeed(long seed, long index){
+		long z = seed + (index+1)*0x9E3779B97F4A7C15L;
+		z = (z ^ (z>>>30))*0xBF58476D1CE4E5B9L;
+		z = (z ^ (z>>>27))*0x94D049BB133111EBL;
+		return z ^ (z>>>31);
+	}
+	
 	/**
 	 * Returns the next pseudorandom, uniformly distributed int value from this 
 	 * random number generator's sequence. The general contract of nextInt is 